@@ -0,0 +1,133 @@
+package hello;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.HashMap;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+/**
+ * Spring context with the customer services on an in-memory H2 database in DB2 mode, and pool-01 sized by the
+ * benchmark. pool-01 is a {@link LoaderScheduler} as in the application, configured by the customer.executor.scheduler,
+ * backpressure and queue-capacity properties.
+ */
+class BenchmarkContext {
+
+  static final String URL =
+      "jdbc:h2:mem:customers;MODE=DB2;DB_CLOSE_DELAY=-1;INIT=CREATE SCHEMA IF NOT EXISTS common";
+
+  // H2 does not accept the DB2 identity and sequence options used by CustomerSchema
+  static final String CREATE_TABLE = "create table common.customers ("
+      + "ID BIGINT  NOT NULL  GENERATED ALWAYS AS IDENTITY (START WITH 1001 INCREMENT BY 1) , "
+      + "FIRST_NAME VARCHAR(255) , "
+      + "LAST_NAME VARCHAR(255) , "
+      + "PRIMARY KEY (ID)"
+      + ")";
+
+  static final String CREATE_TABLE_HILO = "create table common.customers ("
+      + "ID BIGINT  NOT NULL , "
+      + "FIRST_NAME VARCHAR(255) , "
+      + "LAST_NAME VARCHAR(255) , "
+      + "PRIMARY KEY (ID)"
+      + ")";
+
+  @Configuration
+  @EnableTransactionManagement
+  @EnableAsync
+  @Import({ CustomerService.class, ConcurrentCustomerService.class, AsyncCustomerService.class, CustomerCache.class,
+      IdAllocator.class, LoaderExecutor.class, LoaderMetrics.class, LoaderMetrics.Binder.class, DataLogger.class,
+      LoggingDeadLetterSink.class, CustomerInserter.class, SchemaManager.class, NamePool.class, CustomerSnapshot.class,
+      CustomerScanner.class, CustomerUpsert.class, CustomerRepository.class, LoadExecution.class })
+  static class Config {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource dataSource(ThreadPoolTaskExecutor taskExecutor, Environment environment) {
+      HikariDataSource dataSource = new HikariDataSource();
+      dataSource.setJdbcUrl(environment.getProperty("benchmark.url", URL));
+      // one connection per pool-01 thread plus the caller
+      dataSource.setMaximumPoolSize(taskExecutor.getMaxPoolSize() + 1);
+      return dataSource;
+    }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+      return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(DataSource dataSource) {
+      return new DataSourceTransactionManager(dataSource);
+    }
+
+  }
+
+  static AnnotationConfigApplicationContext start(int poolSize, int batchSize) {
+    return start(poolSize, batchSize, IdAllocator.Strategy.IDENTITY);
+  }
+
+  static AnnotationConfigApplicationContext start(int poolSize, int batchSize, IdAllocator.Strategy idStrategy) {
+    return start(poolSize, batchSize, idStrategy, new HashMap<String, Object>());
+  }
+
+  /**
+   * @param extraProperties further customer.* properties, e.g. customer.executor.mode, or benchmark.url to open H2
+   *        with other settings than {@link #URL}
+   */
+  static AnnotationConfigApplicationContext start(
+      int poolSize, int batchSize, IdAllocator.Strategy idStrategy, Map<String, Object> extraProperties) {
+    Map<String, Object> properties = new HashMap<String, Object>(extraProperties);
+    properties.put("customer.insert.batch-size", batchSize);
+    properties.put("customer.id.strategy", idStrategy.name());
+
+    LoaderScheduler executor = new LoaderScheduler(
+        LoaderScheduler.Mode.valueOf(property(properties, "customer.executor.scheduler", "THREAD_POOL")),
+        LoaderScheduler.Backpressure.valueOf(property(properties, "customer.executor.backpressure", "CALLER_RUNS")),
+        60000);
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setQueueCapacity(Integer.parseInt(property(properties, "customer.executor.queue-capacity", 1000)));
+    executor.setAwaitTerminationSeconds(60);
+    executor.initialize();
+
+    AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+    context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", properties));
+    context.registerBean("pool-01", LoaderScheduler.class, () -> executor);
+    context.register(Config.class);
+    context.refresh();
+
+    JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+    jdbcTemplate.execute("drop table if exists common.customers");
+    if (idStrategy == IdAllocator.Strategy.HILO) {
+      IdAllocator idAllocator = context.getBean(IdAllocator.class);
+      jdbcTemplate.execute(CREATE_TABLE_HILO);
+      jdbcTemplate.execute("drop sequence if exists common.customers_id_seq");
+      jdbcTemplate.execute("create sequence common.customers_id_seq start with 1001 increment by "
+          + idAllocator.getBlockSize());
+      idAllocator.reset();
+    } else {
+      jdbcTemplate.execute(CREATE_TABLE);
+    }
+    // the stage table DDL is portable
+    jdbcTemplate.execute("drop table if exists common.customers_stage");
+    jdbcTemplate.execute(CustomerSchema.createStageTable());
+    jdbcTemplate.execute(CustomerSchema.CREATE_STAGE_INDEX);
+
+    return context;
+  }
+
+  private static String property(Map<String, Object> properties, String name, Object defaultValue) {
+    return String.valueOf(properties.getOrDefault(name, defaultValue));
+  }
+
+}
@@ -0,0 +1,103 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Latency of first-name lookups straight from the database vs through {@link CustomerCache} and in
+ * {@link CustomerSnapshot}; compare the p0.50 and p0.99 lines. Lookups pick uniformly from {@code firstNames}
+ * distinct names. {@code firstNameIndex} adds the FIRST_NAME index of {@link SchemaManager}, without it every
+ * database lookup scans the table.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CustomerLookupBenchmark {
+
+  @Param({ "100000" })
+  int rows;
+
+  @Param({ "1000" })
+  int firstNames;
+
+  @Param({ "false", "true" })
+  boolean firstNameIndex;
+
+  AnnotationConfigApplicationContext context;
+
+  CustomerService custService;
+
+  CustomerSnapshot snapshot;
+
+  @Setup(Level.Trial)
+  public void setUp() 
+  throws Exception {
+    context = BenchmarkContext.start(4, 1000);
+    custService = context.getBean(CustomerService.class);
+
+    List<Object[]> splitNames = new ArrayList<Object[]>(rows);
+    for (int i = 0; i < rows; i++) {
+      splitNames.add(new Object[] { "First" + (i % firstNames), "Last" + i });
+    }
+    custService.insertData(splitNames);
+
+    if (firstNameIndex) {
+      SchemaManager schemaManager = context.getBean(SchemaManager.class);
+      schemaManager.buildIndexes();
+      schemaManager.collectStatistics();
+    }
+
+    snapshot = context.getBean(CustomerSnapshot.class);
+    snapshot.load();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.getBean(ThreadPoolTaskExecutor.class).shutdown();
+    context.close();
+  }
+
+  private String nextFirstName() {
+    return "First" + ThreadLocalRandom.current().nextInt(firstNames);
+  }
+
+  @Benchmark
+  public List<Customer> database() 
+  throws Exception {
+    List<Customer> customers = new ArrayList<Customer>();
+    custService.findByFirstName(nextFirstName(), customers::add);
+    return customers;
+  }
+
+  @Benchmark
+  public List<Customer> cached() 
+  throws Exception {
+    return custService.findByFirstNameCached(nextFirstName());
+  }
+
+  @Benchmark
+  public List<Customer> snapshot() {
+    return snapshot.findByFirstName(nextFirstName());
+  }
+
+}
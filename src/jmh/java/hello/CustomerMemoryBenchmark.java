@@ -0,0 +1,96 @@
+package hello;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Retained heap of {@code rows} customers read through the row mapper of the lookups, without ({@code namePoolSize}
+ * 0) and with the {@link NamePool}. The "retainedBytes" counter is the heap held by the result after a full GC. Rows
+ * are generated by H2, with {@code firstNames} and {@code lastNames} distinct values.
+ * <p>
+ * H2's object cache is turned off, so that each value is a new String as with the DB2 driver, and every query runs on
+ * a new connection: H2 keeps the last result of a query per session, which would share its Strings with the next
+ * run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+// the serial collector compacts the whole heap at every full GC, so the heap used afterwards is the live data only
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g", "-XX:+UseSerialGC", "-XX:MarkSweepAlwaysCompactCount=1",
+    "-XX:SoftRefLRUPolicyMSPerMB=0", "-Dh2.objectCache=false" })
+// exactly one load per iteration, and one measured iteration: the counter is summed over iterations.
+// SingleShotTime would do, but it does not report the counter.
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 1, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+public class CustomerMemoryBenchmark {
+
+  static final String SELECT = "select X, 'First' || mod(X, %s), 'Last' || mod(X, %s) from system_range(1, %s)";
+
+  @Param({ "1000000" })
+  int rows;
+
+  @Param({ "1000" })
+  int firstNames;
+
+  @Param({ "10000" })
+  int lastNames;
+
+  @Param({ "0", "4096", "16384", "65536" })
+  int namePoolSize;
+
+  JdbcTemplate jdbcTemplate;
+
+  String sql;
+
+  // held here until the next run, so the result is reachable for sure when the heap is measured
+  List<Customer> customers;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class HeapCounter {
+    public long retainedBytes;
+  }
+
+  @Setup
+  public void setUp() {
+    jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:"));
+    sql = String.format(SELECT, firstNames, lastNames, rows);
+  }
+
+  @Benchmark
+  public void materialize(HeapCounter counter) {
+    customers = null;
+    long before = usedHeapAfterGc();
+    // a new pool per run, as if the result were the first one read
+    customers = jdbcTemplate.query(sql, CustomerQueries.rowMapper(new NamePool(namePoolSize)));
+    counter.retainedBytes += usedHeapAfterGc() - before;
+    if (customers.size() != rows) {
+      throw new IllegalStateException("rows=" + customers.size());
+    }
+  }
+
+  private static long usedHeapAfterGc() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+}
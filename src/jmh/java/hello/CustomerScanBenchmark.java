@@ -0,0 +1,101 @@
+package hello;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Full scan of {@code rows} customers with {@link CustomerScanner} on 1 to N pool-01 threads, in ID order and
+ * unordered. The "rows" counter is rows/sec. H2 runs the statements of a database one at a time unless opened with
+ * MULTI_THREADED=1, as here; the scan scales only up to the cores of the machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+public class CustomerScanBenchmark {
+
+  @Param({ "1000000" })
+  int rows;
+
+  @Param({ "1", "2", "4", "8" })
+  int threads;
+
+  @Param({ "false", "true" })
+  boolean ordered;
+
+  AnnotationConfigApplicationContext context;
+
+  CustomerScanner scanner;
+
+  ThreadPoolTaskExecutor taskExecutor;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class RowCounter {
+    public long rows;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp()
+  throws Exception {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("customer.query.fetch-size", 1000);
+    properties.put("benchmark.url", BenchmarkContext.URL + ";MULTI_THREADED=1");
+    context = BenchmarkContext.start(threads, 1000, IdAllocator.Strategy.IDENTITY, properties);
+    scanner = context.getBean(CustomerScanner.class);
+    taskExecutor = context.getBean(ThreadPoolTaskExecutor.class);
+
+    CustomerService custService = context.getBean(CustomerService.class);
+    CustomerBatch batch = new CustomerBatch(100000);
+    for (int i = 0; i < rows; i++) {
+      batch.add("First" + (i % 1000), "Last" + i);
+      if (batch.isFull()) {
+        custService.insertData(batch);
+        batch.clear();
+      }
+    }
+    if (batch.size() > 0) {
+      custService.insertData(batch);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    taskExecutor.shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public long scan(RowCounter counter)
+  throws Exception {
+    LongAdder ids = new LongAdder();
+    ScanProgress progress = CustomerScanner.scanBlocks(ordered, block -> {
+      for (Customer customer : block) {
+        ids.add(customer.getId());
+      }
+    }, scanner, taskExecutor);
+    counter.rows += progress.getRows();
+    return ids.sum();
+  }
+
+}
@@ -0,0 +1,125 @@
+package hello;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rows/sec of the data path logging alone, per {@link DataLogger.Mode}, against the former per-row String.format
+ * logging (mode STRING_FORMAT). Log events are written by a logback encoder to a temporary file, synchronously or
+ * through an {@link AsyncAppender}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataLoggingBenchmark {
+
+  static final int ROWS = 1000;
+
+  @Param({ "STRING_FORMAT", "ALL", "SAMPLED", "SUMMARY", "OFF" })
+  String mode;
+
+  @Param({ "false", "true" })
+  boolean async;
+
+  ch.qos.logback.classic.Logger log;
+
+  Appender<ILoggingEvent> appender;
+
+  DataLogger dataLogger;
+
+  File logFile;
+
+  List<Object[]> splitNames = new ArrayList<Object[]>(ROWS);
+
+  int[][] updateCounts = new int[ROWS / 100][100];
+
+  @Setup
+  public void setUp() 
+  throws IOException {
+    for (int i = 0; i < ROWS; i++) {
+      splitNames.add(new Object[] { "First" + (i % 100), "Last" + i });
+    }
+    if (!"STRING_FORMAT".equals(mode)) {
+      dataLogger = new DataLogger(DataLogger.Mode.valueOf(mode), 100);
+    }
+    logFile = File.createTempFile("data-logging", ".log");
+
+    LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+
+    PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+    encoder.setContext(loggerContext);
+    encoder.setPattern("%d{yyyy-MM-dd HH:mm:ss.SSS} %5p [%15.15t] %-40.40logger{39} : %m%n");
+    encoder.start();
+
+    OutputStreamAppender<ILoggingEvent> output = new OutputStreamAppender<ILoggingEvent>();
+    output.setContext(loggerContext);
+    output.setEncoder(encoder);
+    output.setOutputStream(new FileOutputStream(logFile));
+    output.start();
+    appender = output;
+
+    if (async) {
+      AsyncAppender asyncAppender = new AsyncAppender();
+      asyncAppender.setContext(loggerContext);
+      asyncAppender.setQueueSize(8192);
+      asyncAppender.setDiscardingThreshold(0);
+      asyncAppender.addAppender(output);
+      asyncAppender.start();
+      appender = asyncAppender;
+    }
+
+    log = loggerContext.getLogger(DataLoggingBenchmark.class);
+    log.setLevel(Level.INFO);
+    log.setAdditive(false);
+    log.addAppender(appender);
+  }
+
+  @TearDown
+  public void tearDown() {
+    log.detachAppender(appender);
+    appender.stop();
+    logFile.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void logRows() {
+    if (dataLogger == null) {
+      splitNames.forEach(name -> log.info(String.format("Working data: %s, %s", name[0], name[1])));
+      log.info(String.format("Update counts: %s", Arrays.deepToString(updateCounts)));
+    } else {
+      dataLogger.rows(log, "Working data", splitNames);
+      dataLogger.updateCounts(log, updateCounts);
+    }
+  }
+
+}
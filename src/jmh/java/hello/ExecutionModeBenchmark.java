@@ -0,0 +1,134 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Chunk inserts and parallel lookups on pool-01 through {@link BulkLoader} (POOL_01), and through
+ * {@link LoaderExecutor} on pool-01 (POOL) or on virtual threads (VIRTUAL). VIRTUAL needs a Java 21+ JVM, e.g.
+ * {@code -jvm /path/to/jdk21/bin/java -jvmArgsAppend --add-opens=java.base/java.lang=ALL-UNNAMED}; otherwise it runs
+ * as POOL.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExecutionModeBenchmark {
+
+  public enum Execution {
+    POOL_01, POOL, VIRTUAL
+  }
+
+  @Param({ "10000" })
+  int rows;
+
+  @Param({ "100" })
+  int batchSize;
+
+  @Param({ "4" })
+  int poolSize;
+
+  @Param({ "POOL_01", "POOL", "VIRTUAL" })
+  Execution execution;
+
+  AnnotationConfigApplicationContext context;
+
+  JdbcTemplate jdbcTemplate;
+
+  ThreadPoolTaskExecutor taskExecutor;
+
+  ConcurrentCustomerService conCustService;
+
+  LoaderExecutor loaderExecutor;
+
+  List<Object[]> splitNames;
+
+  List<String> firstNames;
+
+  @Setup(Level.Trial)
+  public void setUp() 
+  throws Exception {
+    LoaderExecutor.Mode mode = execution == Execution.VIRTUAL ? LoaderExecutor.Mode.VIRTUAL : LoaderExecutor.Mode.POOL;
+    context = BenchmarkContext.start(poolSize, batchSize, IdAllocator.Strategy.IDENTITY,
+        Collections.<String, Object>singletonMap("customer.executor.mode", mode.name()));
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+    taskExecutor = context.getBean(ThreadPoolTaskExecutor.class);
+    conCustService = context.getBean(ConcurrentCustomerService.class);
+    loaderExecutor = context.getBean(LoaderExecutor.class);
+
+    splitNames = new ArrayList<Object[]>(rows);
+    firstNames = new ArrayList<String>();
+    for (int i = 0; i < rows; i++) {
+      splitNames.add(new Object[] { "First" + (i % 100), "Last" + i });
+    }
+    for (int i = 0; i < 100; i++) {
+      firstNames.add("First" + i);
+    }
+    // data for lookup(); insert() starts from an empty table each time
+    conCustService.insertData(splitNames);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    taskExecutor.shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public BulkLoadResult insert() 
+  throws Exception {
+    // part of the measured time, but small next to the load
+    jdbcTemplate.execute("truncate table common.customers");
+    BulkLoadResult result = execution == Execution.POOL_01
+        ? ConcurrentCustomerService.insertDataConcurrently(splitNames, conCustService, taskExecutor)
+        : ConcurrentCustomerService.insertDataStructured(splitNames, conCustService, loaderExecutor);
+    if (!result.isSuccess()) {
+      throw new IllegalStateException(result.toString());
+    }
+    return result;
+  }
+
+  @Benchmark
+  public Object lookup() 
+  throws Exception {
+    if (execution != Execution.POOL_01) {
+      return ConcurrentCustomerService.findByFirstNameConcurrently(firstNames, conCustService, loaderExecutor);
+    }
+
+    List<Future<List<Customer>>> futures = new ArrayList<Future<List<Customer>>>(firstNames.size());
+    for (String firstName : firstNames) {
+      futures.add(taskExecutor.submit(() -> {
+        List<Customer> customers = new ArrayList<Customer>();
+        conCustService.findByFirstName(firstName, customers::add);
+        return customers;
+      }));
+    }
+    List<List<Customer>> results = new ArrayList<List<Customer>>(futures.size());
+    for (Future<List<Customer>> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+}
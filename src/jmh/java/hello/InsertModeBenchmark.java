@@ -0,0 +1,99 @@
+package hello;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Loads {@code rows} customers in one transaction with each {@link CustomerInserter.Mode}. Rows/s are reported through
+ * the "rows" counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InsertModeBenchmark {
+
+  @Param({ "10000" })
+  int rows;
+
+  @Param({ "100", "1000" })
+  int batchSize;
+
+  @Param({ "BATCH", "MULTI_ROW", "STAGING" })
+  CustomerInserter.Mode mode;
+
+  @Param({ "false", "true" })
+  boolean autoTune;
+
+  @Param({ "IDENTITY", "HILO" })
+  IdAllocator.Strategy idStrategy;
+
+  AnnotationConfigApplicationContext context;
+
+  JdbcTemplate jdbcTemplate;
+
+  CustomerService custService;
+
+  CustomerBatch batch;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class RowCounter {
+    public long rows;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("customer.insert.auto-tune", autoTune);
+    context = BenchmarkContext.start(1, batchSize, idStrategy, properties);
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+    custService = context.getBean(CustomerService.class);
+
+    batch = new CustomerBatch(rows);
+  }
+
+  @Setup(Level.Invocation)
+  public void truncate() {
+    jdbcTemplate.execute("truncate table common.customers");
+    // new rows each time, so that HILO assigns new IDs
+    batch.clear();
+    for (int i = 0; i < rows; i++) {
+      batch.add("First" + (i % 1000), "Last" + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.getBean(ThreadPoolTaskExecutor.class).shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public void insert(RowCounter counter)
+  throws Exception {
+    custService.insertData(batch, mode);
+    counter.rows += rows;
+  }
+
+}
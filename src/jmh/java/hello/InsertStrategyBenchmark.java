@@ -0,0 +1,131 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Loads {@code rows} customers with each {@link LoadExecution} mode, and through the async pipeline. The throughput
+ * run reports rows/s through the "rows" counter, the sample time run reports latency percentiles (p0.99) of a whole
+ * load.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InsertStrategyBenchmark {
+
+  public enum Strategy {
+    SYNC, CONCURRENT, ASYNC, PIPELINED
+  }
+
+  @Param({ "10000" })
+  int rows;
+
+  @Param({ "3", "100", "1000" })
+  int batchSize;
+
+  @Param({ "4" })
+  int poolSize;
+
+  @Param({ "SYNC", "CONCURRENT", "ASYNC", "PIPELINED" })
+  Strategy strategy;
+
+  @Param({ "IDENTITY", "HILO" })
+  IdAllocator.Strategy idStrategy;
+
+  AnnotationConfigApplicationContext context;
+
+  JdbcTemplate jdbcTemplate;
+
+  ThreadPoolTaskExecutor taskExecutor;
+
+  LoadExecution loadExecution;
+
+  AsyncCustomerService asyncCustService;
+
+  List<Object[]> splitNames;
+
+  int pipelineChunkSize;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class RowCounter {
+    public long rows;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = BenchmarkContext.start(poolSize, batchSize, idStrategy);
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+    taskExecutor = context.getBean(ThreadPoolTaskExecutor.class);
+    loadExecution = context.getBean(LoadExecution.class);
+    asyncCustService = context.getBean(AsyncCustomerService.class);
+
+    // two chunks per lane, so that the preparation of one overlaps the insert of the other
+    pipelineChunkSize = BulkLoader.chunkSize(rows, poolSize * 2, batchSize);
+
+    splitNames = new ArrayList<Object[]>(rows);
+    for (int i = 0; i < rows; i++) {
+      splitNames.add(new Object[] { "First" + (i % 1000), "Last" + i });
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void truncate() {
+    jdbcTemplate.execute("truncate table common.customers");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    taskExecutor.shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public void insert(RowCounter counter) 
+  throws Exception {
+    switch (strategy) {
+    case SYNC:
+      check(loadExecution.load(splitNames, LoadExecution.Mode.SYNCHRONOUS));
+      break;
+    case CONCURRENT:
+      check(loadExecution.load(splitNames, LoadExecution.Mode.PARTITIONED));
+      break;
+    case ASYNC:
+      check(loadExecution.load(splitNames, LoadExecution.Mode.ASYNC));
+      break;
+    case PIPELINED:
+      check(AsyncCustomerService.insertDataPipelined(
+          splitNames.iterator(), pipelineChunkSize, poolSize, asyncCustService).get());
+      break;
+    }
+    counter.rows += rows;
+  }
+
+  private static void check(BulkLoadResult result) {
+    if (!result.isSuccess()) {
+      throw new IllegalStateException(result.toString());
+    }
+  }
+
+}
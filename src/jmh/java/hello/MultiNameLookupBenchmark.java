@@ -0,0 +1,116 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Latency of looking up {@code names} random first names (with repeats) out of {@code firstNames}, with the FIRST_NAME
+ * index: one call per name in a loop, one call per name in parallel ({@code findByFirstNameConcurrently}) and IN lists
+ * in parallel ({@code findByFirstNames}) on {@code poolSize} pool-01 threads. H2 is opened with MULTI_THREADED=1.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MultiNameLookupBenchmark {
+
+  @Param({ "100000" })
+  int rows;
+
+  @Param({ "10000" })
+  int firstNames;
+
+  @Param({ "100", "10000" })
+  int names;
+
+  @Param({ "1", "4" })
+  int poolSize;
+
+  AnnotationConfigApplicationContext context;
+
+  ConcurrentCustomerService conCustService;
+
+  LoaderExecutor loaderExecutor;
+
+  @Setup(Level.Trial)
+  public void setUp()
+  throws Exception {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("benchmark.url", BenchmarkContext.URL + ";MULTI_THREADED=1");
+    context = BenchmarkContext.start(poolSize, 1000, IdAllocator.Strategy.IDENTITY, properties);
+    conCustService = context.getBean(ConcurrentCustomerService.class);
+    loaderExecutor = context.getBean(LoaderExecutor.class);
+
+    List<Object[]> splitNames = new ArrayList<Object[]>(rows);
+    for (int i = 0; i < rows; i++) {
+      splitNames.add(new Object[] { "First" + (i % firstNames), "Last" + i });
+    }
+    context.getBean(CustomerService.class).insertData(splitNames);
+
+    SchemaManager schemaManager = context.getBean(SchemaManager.class);
+    schemaManager.buildIndexes();
+    schemaManager.collectStatistics();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.getBean(ThreadPoolTaskExecutor.class).shutdown();
+    context.close();
+  }
+
+  private List<String> nextFirstNames() {
+    List<String> next = new ArrayList<String>(names);
+    for (int i = 0; i < names; i++) {
+      next.add("First" + ThreadLocalRandom.current().nextInt(firstNames));
+    }
+    return next;
+  }
+
+  @Benchmark
+  public Map<String, List<Customer>> loop()
+  throws Exception {
+    Map<String, List<Customer>> customers = new HashMap<String, List<Customer>>();
+    for (String firstName : nextFirstNames()) {
+      if (!customers.containsKey(firstName)) {
+        List<Customer> found = new ArrayList<Customer>();
+        conCustService.findByFirstName(firstName, found::add);
+        customers.put(firstName, found);
+      }
+    }
+    return customers;
+  }
+
+  @Benchmark
+  public Map<String, List<Customer>> perNameParallel()
+  throws Exception {
+    return ConcurrentCustomerService.findByFirstNameConcurrently(nextFirstNames(), conCustService, loaderExecutor);
+  }
+
+  @Benchmark
+  public Map<String, List<Customer>> inLists()
+  throws Exception {
+    return ConcurrentCustomerService.findByFirstNames(nextFirstNames(), conCustService, loaderExecutor);
+  }
+
+}
@@ -0,0 +1,124 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Loads {@code rows} customers in chunks of uneven sizes, every eighth chunk eight times as large as the others, all
+ * submitted to pool-01 at once: with the THREAD_POOL and WORK_STEALING schedulers of {@link LoaderScheduler}, and a
+ * queue that holds all chunks or only {@code poolSize} of them with CALLER_RUNS or BLOCK backpressure. Reports rows/s
+ * through the "rows" counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SchedulerBenchmark {
+
+  @Param({ "100000" })
+  int rows;
+
+  @Param({ "500" })
+  int chunkSize;
+
+  @Param({ "4" })
+  int poolSize;
+
+  @Param({ "THREAD_POOL", "WORK_STEALING" })
+  LoaderScheduler.Mode scheduler;
+
+  @Param({ "CALLER_RUNS", "BLOCK" })
+  LoaderScheduler.Backpressure backpressure;
+
+  @Param({ "4", "1000" })
+  int queueCapacity;
+
+  AnnotationConfigApplicationContext context;
+
+  JdbcTemplate jdbcTemplate;
+
+  LoaderScheduler taskExecutor;
+
+  ConcurrentCustomerService conCustService;
+
+  List<List<Object[]>> chunks;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class RowCounter {
+    public long rows;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("customer.executor.scheduler", scheduler.name());
+    properties.put("customer.executor.backpressure", backpressure.name());
+    properties.put("customer.executor.queue-capacity", queueCapacity);
+    context = BenchmarkContext.start(poolSize, 100, IdAllocator.Strategy.IDENTITY, properties);
+    jdbcTemplate = context.getBean(JdbcTemplate.class);
+    taskExecutor = context.getBean(LoaderScheduler.class);
+    conCustService = context.getBean(ConcurrentCustomerService.class);
+
+    List<Object[]> splitNames = new ArrayList<Object[]>(rows);
+    for (int i = 0; i < rows; i++) {
+      splitNames.add(new Object[] { "First" + (i % 1000), "Last" + i });
+    }
+    chunks = new ArrayList<List<Object[]>>();
+    for (int from = 0; from < rows; ) {
+      int to = Math.min(from + (chunks.size() % 8 == 0 ? chunkSize * 8 : chunkSize), rows);
+      chunks.add(splitNames.subList(from, to));
+      from = to;
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void truncate() {
+    jdbcTemplate.execute("truncate table common.customers");
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    taskExecutor.shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public void insert(RowCounter counter)
+  throws Exception {
+    List<ListenableFuture<ChunkResult>> futures = new ArrayList<ListenableFuture<ChunkResult>>(chunks.size());
+    for (int chunkNo = 0; chunkNo < chunks.size(); chunkNo++) {
+      futures.add(taskExecutor.submitListenable(new CallableInsertTask(chunkNo, chunks.get(chunkNo), conCustService)));
+    }
+    for (ListenableFuture<ChunkResult> future : futures) {
+      ChunkResult result = future.get();
+      if (!result.isSuccess()) {
+        throw new IllegalStateException(result.toString());
+      }
+    }
+    counter.rows += rows;
+  }
+
+}
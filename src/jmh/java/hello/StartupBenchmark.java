@@ -0,0 +1,81 @@
+package hello;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Time to the first insert: {@link Application} started with a one-customer customer.ingest.file on H2, until the
+ * customer is committed, with the default settings (eager beans, schema migration) and with the fast-start profile
+ * (lazy beans, no migration). One start per fork, so class loading and the JIT are cold, as in a new batch container.
+ * The schema is created before the start, by plain JDBC.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+
+  @Param({ "default", "fast-start" })
+  String profile;
+
+  Path file;
+
+  ConfigurableApplicationContext context;
+
+  @Setup(Level.Trial)
+  public void setUp()
+  throws Exception {
+    try (Connection connection = DriverManager.getConnection(BenchmarkContext.URL, "sa", "sa");
+        Statement statement = connection.createStatement()) {
+      statement.execute(BenchmarkContext.CREATE_TABLE);
+      // H2 does not accept the DB2 sequence options either, SchemaManager creates the other tables
+      statement.execute("create sequence common.customers_id_seq start with 1001 increment by 1000");
+    }
+
+    file = Files.createTempFile("customers", ".txt");
+    Files.write(file, Collections.singletonList("John Woo"), StandardCharsets.UTF_8);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  throws Exception {
+    context.close();
+    Files.delete(file);
+  }
+
+  @Benchmark
+  public ConfigurableApplicationContext firstInsert() {
+    context = SpringApplication.run(Application.class,
+        "--spring.profiles.active=" + profile,
+        "--spring.datasource.url=" + BenchmarkContext.URL,
+        "--spring.datasource.driver-class-name=org.h2.Driver",
+        "--spring.datasource.username=sa",
+        "--spring.datasource.password=sa",
+        "--customer.ingest.file=" + file);
+    return context;
+  }
+
+}
@@ -0,0 +1,111 @@
+package hello;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Upserts of {@code rows} customers into a table of {@code tableRows}, {@code duplicates} percent of them already in
+ * the table, with and without the in-memory key set of {@link CustomerUpsert}. The table has the (FIRST_NAME,
+ * LAST_NAME, ID) index, so the database looks each row up in the index. Rows/s are reported through the "rows" counter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UpsertBenchmark {
+
+  @Param({ "100000" })
+  int tableRows;
+
+  @Param({ "10000" })
+  int rows;
+
+  @Param({ "0", "50", "100" })
+  int duplicates;
+
+  @Param({ "false", "true" })
+  boolean keySet;
+
+  AnnotationConfigApplicationContext context;
+
+  CustomerService custService;
+
+  CustomerBatch batch;
+
+  long newNames;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class RowCounter {
+    public long rows;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp()
+  throws Exception {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("customer.insert.mode", CustomerInserter.Mode.UPSERT.name());
+    properties.put("customer.upsert.key-set", keySet);
+    context = BenchmarkContext.start(1, 1000, IdAllocator.Strategy.IDENTITY, properties);
+    custService = context.getBean(CustomerService.class);
+
+    JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+    jdbcTemplate.execute(CustomerSchema.createFirstNameIndex(true));
+    CustomerBatch load = new CustomerBatch(tableRows);
+    for (int i = 0; i < tableRows; i++) {
+      load.add("First" + (i % 1000), "Last" + i);
+    }
+    custService.insertData(load, CustomerInserter.Mode.BATCH);
+
+    batch = new CustomerBatch(rows);
+  }
+
+  @Setup(Level.Invocation)
+  public void fill() {
+    batch.clear();
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < rows; i++) {
+      if (random.nextInt(100) < duplicates) {
+        int existing = random.nextInt(tableRows);
+        batch.add("First" + (existing % 1000), "Last" + existing);
+      } else {
+        batch.add("New" + (newNames % 1000), "Customer" + newNames++);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.getBean(ThreadPoolTaskExecutor.class).shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public void upsert(RowCounter counter)
+  throws Exception {
+    custService.insertData(batch);
+    counter.rows += rows;
+  }
+
+}
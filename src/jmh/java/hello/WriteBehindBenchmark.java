@@ -0,0 +1,96 @@
+package hello;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Callers inserting {@code rowsPerCall} customers at a time from 4 threads: one transaction per call through
+ * {@link CustomerService} vs queued to the {@link WriteBehindInserter}. Calls/sec; the write-behind score is what its
+ * writer sustains, as callers wait for room once the queue is full. Each iteration ends with a flush.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WriteBehindBenchmark {
+
+  @Param({ "2" })
+  int rowsPerCall;
+
+  @Param({ "1000" })
+  int batchRows;
+
+  AnnotationConfigApplicationContext context;
+
+  CustomerService custService;
+
+  WriteBehindInserter writeBehindInserter;
+
+  @State(Scope.Thread)
+  public static class Caller {
+    CustomerBatch batch;
+
+    @Setup(Level.Trial)
+    public void setUp(WriteBehindBenchmark benchmark) {
+      batch = new CustomerBatch(benchmark.rowsPerCall);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = BenchmarkContext.start(4, 1000);
+    custService = context.getBean(CustomerService.class);
+    writeBehindInserter = new WriteBehindInserter(custService, 10000, batchRows, 50, 60000);
+  }
+
+  @TearDown(Level.Iteration)
+  public void flush()
+  throws Exception {
+    writeBehindInserter.flush();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  throws Exception {
+    writeBehindInserter.close();
+    context.getBean(ThreadPoolTaskExecutor.class).shutdown();
+    context.close();
+  }
+
+  @Benchmark
+  public void direct(Caller caller)
+  throws Exception {
+    caller.batch.clear();
+    for (int i = 0; i < rowsPerCall; i++) {
+      caller.batch.add("First" + i, "Last" + i);
+    }
+    custService.insertData(caller.batch);
+  }
+
+  @Benchmark
+  public void writeBehind()
+  throws Exception {
+    for (int i = 0; i < rowsPerCall; i++) {
+      writeBehindInserter.insert("First" + i, "Last" + i);
+    }
+  }
+
+}
@@ -1,148 +1,384 @@
-package hello;
-
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.CommandLineRunner;
-import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-import org.springframework.transaction.annotation.EnableTransactionManagement;
-
-@SpringBootApplication
-@EnableTransactionManagement
-@EnableAsync
-public class Application implements CommandLineRunner {
-
-  private static final Logger log = LoggerFactory.getLogger(Application.class);
-
-  @Bean(name="pool-01")
-  public ThreadPoolTaskExecutor pool01() {
-    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-    
-    executor.setCorePoolSize(4);
-    executor.setMaxPoolSize(4);
-    executor.initialize();
-
-    return executor;
-  }
-  
-  public static void main(String args[]) {
-    SpringApplication.run(Application.class, args);
-  }
-  
-  @Autowired
-  CustomerService custService;
-  
-  @Autowired
-  ConcurrentCustomerService conCustService;
-  
-  @Autowired
-  AsyncCustomerService asyncCustService;
-  
-  @Autowired
-  ThreadPoolTaskExecutor taskExecutor;
-  
-  @Override
-  public void run(String... args) throws Exception {
-    
-    startProcess();
-    startConcurrentProcess();
-    startAsyncProcess();
-    
-    if (taskExecutor.getActiveCount() == 0) {
-      taskExecutor.shutdown();
-    }
-  }
-  
-  public void startProcess() {
-    log.info("startProcess() start");
-    
-    try {
-      custService.createTable();
-      
-      final String[] originalNames = new String[] { "John Woo", "Jeff Dean", "Josh Bloch", "Josh Long" };
-      log.info(String.format("originalNames=%s", Arrays.toString(originalNames)));
-      
-      List<Object[]> splitNames = Arrays.asList(originalNames).stream()
-        .map(name -> name.split(" "))
-        .collect(Collectors.toList());
-      
-      splitNames.forEach(name -> log.info(String.format("Source data: %s, %s", name[0], name[1])));
-      
-      custService.insertData(splitNames);
-
-      final String searchFirstName = "Josh";
-      log.info(String.format("Customers with firstName='%s': ", searchFirstName));
-      custService.findByFirstName(searchFirstName);
-      
-    } catch (Exception e) {
-      log.error("startProcess(): " + e.getMessage(), e);
-    }
-    
-    log.info("startProcess() end");
-  }
-  
-  
-  public void startConcurrentProcess() {
-    log.info("startConcurrentProcess() start");
-    
-    try {
-      conCustService.createTable();
-
-      final String[] originalNames = new String[] { "John Woo", "Jeff Dean", "Josh Bloch", "Josh Long" };
-      log.info(String.format("originalNames=%s", Arrays.toString(originalNames)));
-
-      List<Object[]> splitNames = Arrays.asList(originalNames).stream()
-          .map(name -> name.split(" "))
-          .collect(Collectors.toList());
-
-      splitNames.forEach(name -> log.info(String.format("Source data: %s, %s", name[0], name[1])));
-
-      ConcurrentCustomerService.insertDataConcurrently(splitNames, conCustService, taskExecutor);
-      
-      final String searchFirstName = "Josh";
-      log.info(String.format("Customers with firstName='%s': ", searchFirstName));
-      conCustService.findByFirstName(searchFirstName);
-
-    } catch (Exception e) {
-      log.error("startConcurrentProcess(): " + e.getMessage(), e);
-    }
-    
-    log.info("startConcurrentProcess() end");
-  }
-  
-  
-  public void startAsyncProcess() {
-    log.info("startAsyncProcess() start");
-    
-    try {
-      asyncCustService.createTable();
-
-      final String[] originalNames = new String[] { "John Woo", "Jeff Dean", "Josh Bloch", "Josh Long" };
-      log.info(String.format("originalNames=%s", Arrays.toString(originalNames)));
-
-      List<Object[]> splitNames = Arrays.asList(originalNames).stream()
-          .map(name -> name.split(" "))
-          .collect(Collectors.toList());
-
-      splitNames.forEach(name -> log.info(String.format("Source data: %s, %s", name[0], name[1])));
-
-      AsyncCustomerService.insertDataAsync(splitNames, asyncCustService);
-      
-      final String searchFirstName = "Josh";
-      log.info(String.format("Customers with firstName='%s': ", searchFirstName));
-      asyncCustService.findByFirstName(searchFirstName);
-
-    } catch (Exception e) {
-      log.error("startAsyncProcess(): " + e.getMessage(), e);
-    }
-    
-    log.info("startAsyncProcess() end");
-  }
-}
+package hello;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+@SpringBootApplication
+@EnableTransactionManagement
+@EnableAsync
+public class Application implements CommandLineRunner {
+
+  private static final Logger log = LoggerFactory.getLogger(Application.class);
+  
+  // command line arguments that run the schema migration and the demo loads, whatever the customer.startup.* flags
+  static final String MIGRATE_COMMAND = "migrate";
+  static final String DEMO_COMMAND = "demo";
+  
+  /**
+   * With customer.startup.lazy-init=true (the fast-start profile) the application beans, pool-01 included, are created
+   * when first used instead of at start, as spring.main.lazy-initialization does from Spring Boot 2.2 on. The fields
+   * below are @Lazy, so that the run creates only the beans it uses, after the context is up.
+   */
+  @Bean
+  public static BeanFactoryPostProcessor lazyInitialization(Environment environment) {
+    boolean lazyInit = environment.getProperty("customer.startup.lazy-init", Boolean.class, false);
+    return beanFactory -> {
+      if (!lazyInit) {
+        return;
+      }
+      for (String name : beanFactory.getBeanDefinitionNames()) {
+        BeanDefinition definition = beanFactory.getBeanDefinition(name);
+        if (definition.getRole() == BeanDefinition.ROLE_APPLICATION) {
+          definition.setLazyInit(true);
+        }
+      }
+    };
+  }
+
+  @Bean(name="pool-01")
+  public LoaderScheduler pool01(
+      @Value("${customer.executor.pool-size:4}") int poolSize,
+      @Value("${customer.executor.scheduler:THREAD_POOL}") LoaderScheduler.Mode mode,
+      @Value("${customer.executor.queue-capacity:1000}") int queueCapacity,
+      @Value("${customer.executor.backpressure:CALLER_RUNS}") LoaderScheduler.Backpressure backpressure,
+      @Value("${customer.executor.offer-timeout-ms:60000}") long offerTimeoutMillis,
+      @Value("${customer.executor.drain-timeout-seconds:60}") int drainTimeoutSeconds) {
+    LoaderScheduler executor = new LoaderScheduler(mode, backpressure, offerTimeoutMillis);
+    
+    executor.setCorePoolSize(poolSize);
+    executor.setMaxPoolSize(poolSize);
+    executor.setQueueCapacity(queueCapacity);
+    executor.setAwaitTerminationSeconds(drainTimeoutSeconds);
+    executor.initialize();
+
+    return executor;
+  }
+  
+  public static void main(String args[]) {
+    SpringApplication.run(Application.class, args);
+  }
+  
+  @Autowired
+  @Lazy
+  CustomerService custService;
+  
+  @Autowired
+  @Lazy
+  ConcurrentCustomerService conCustService;
+  
+  @Autowired
+  @Lazy
+  AsyncCustomerService asyncCustService;
+  
+  @Autowired
+  @Lazy
+  ResilientInserter resilientInserter;
+  
+  @Autowired
+  @Lazy
+  LoaderScheduler taskExecutor;
+  
+  @Autowired
+  @Lazy
+  LoaderExecutor loaderExecutor;
+  
+  @Autowired
+  @Lazy
+  SchemaManager schemaManager;
+  
+  @Autowired
+  @Lazy
+  BulkLoadJob bulkLoadJob;
+  
+  @Autowired
+  @Lazy
+  CustomerSnapshot customerSnapshot;
+  
+  @Autowired
+  @Lazy
+  CustomerScanner customerScanner;
+  
+  @Autowired
+  @Lazy
+  WriteBehindInserter writeBehindInserter;
+  
+  @Autowired
+  @Lazy
+  CustomerUpsert customerUpsert;
+  
+  @Autowired
+  @Lazy
+  PoolMetrics poolMetrics;
+  
+  @Autowired
+  @Lazy
+  LoaderMetrics loaderMetrics;
+  
+  @Autowired
+  @Lazy
+  DataLogger dataLogger;
+  
+  @Autowired
+  ConfigurableListableBeanFactory beanFactory;
+  
+  @Value("${customer.startup.migrate:true}")
+  boolean migrateOnStart;
+  
+  @Value("${customer.startup.demo:true}")
+  boolean demoOnStart;
+  
+  @Value("${customer.insert.recovery:false}")
+  boolean insertRecovery;
+  
+  @Value("${customer.ingest.file:}")
+  String ingestFile;
+  
+  @Value("${customer.ingest.csv:false}")
+  boolean ingestCsv;
+  
+  @Value("${customer.ingest.chunk-size:3000}")
+  int ingestChunkSize;
+  
+  @Value("${customer.ingest.bulk-load:false}")
+  boolean ingestBulkLoad;
+  
+  @Value("${customer.ingest.job-id:}")
+  String ingestJobId;
+  
+  @Value("${customer.export.file:}")
+  String exportFile;
+  
+  @Value("${customer.export.ordered:true}")
+  boolean exportOrdered;
+  
+  @Override
+  public void run(String... args) throws Exception {
+    
+    List<String> commands = Arrays.asList(args);
+    boolean demo = ingestFile.isEmpty() && (demoOnStart || commands.contains(DEMO_COMMAND));
+    // the demo loads need the schema
+    if (migrateOnStart || demo || commands.contains(MIGRATE_COMMAND)) {
+      startMigration();
+    }
+    
+    if (!ingestFile.isEmpty()) {
+      startFileProcess(Paths.get(ingestFile));
+    } else if (demo) {
+      startProcess();
+      startConcurrentProcess();
+      startAsyncProcess();
+    }
+    
+    if (!exportFile.isEmpty()) {
+      startExport(Paths.get(exportFile));
+    }
+    
+    // customers queued for write-behind are written before pool-01 and the application stop
+    if (created(WriteBehindInserter.class)) {
+      writeBehindInserter.flush();
+      log.info(writeBehindInserter.toString());
+    }
+    if (created(CustomerUpsert.class)) {
+      log.info(customerUpsert.toString());
+    }
+    
+    if (created(PoolMetrics.class)) {
+      log.info(poolMetrics.toString());
+    }
+    if (created(LoaderMetrics.class)) {
+      log.info(loaderMetrics.toString());
+    }
+    
+    // waits up to customer.executor.drain-timeout-seconds for the tasks still queued or running
+    if (created(LoaderScheduler.class)) {
+      taskExecutor.shutdown();
+    }
+  }
+  
+  /**
+   * Whether a bean of the type exists yet. With customer.startup.lazy-init=true the beans the run did not use have not
+   * been created, and the end of the run leaves them so.
+   */
+  boolean created(Class<?> type) {
+    for (String name : beanFactory.getBeanNamesForType(type, false, false)) {
+      if (beanFactory.containsSingleton(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  public void startMigration() {
+    log.info("startMigration() start");
+    
+    try {
+      custService.createTable();
+      
+    } catch (Exception e) {
+      log.error("startMigration(): " + e.getMessage(), e);
+    }
+    
+    log.info("startMigration() end");
+  }
+  
+  
+  public void startProcess() {
+    log.info("startProcess() start");
+    
+    try {
+      final String[] originalNames = new String[] { "John Woo", "Jeff Dean", "Josh Bloch", "Josh Long" };
+      log.info(String.format("originalNames=%s", Arrays.toString(originalNames)));
+      
+      List<Object[]> splitNames = Arrays.asList(originalNames).stream()
+        .map(name -> name.split(" "))
+        .collect(Collectors.toList());
+      
+      dataLogger.rows(log, "Source data", splitNames);
+      
+      custService.insertData(splitNames);
+
+      final String searchFirstName = "Josh";
+      log.info(String.format("Customers with firstName='%s': ", searchFirstName));
+      custService.findByFirstName(searchFirstName);
+      
+      customerSnapshot.load();
+      log.info(String.format("Customers with firstName='%s' in the snapshot: ", searchFirstName));
+      customerSnapshot.findByFirstName(searchFirstName, customer -> log.info(customer.toString()));
+      
+    } catch (Exception e) {
+      log.error("startProcess(): " + e.getMessage(), e);
+    }
+    
+    log.info("startProcess() end");
+  }
+  
+  
+  public void startFileProcess(Path file) {
+    log.info(String.format("startFileProcess() start: file=%s", file));
+    
+    try {
+      if (ingestBulkLoad) {
+        String jobId = ingestJobId.isEmpty() ? BulkLoadJob.jobId(file) : ingestJobId;
+        BulkLoadResult result = schemaManager.bulkLoad(
+            () -> BulkLoadJob.load(jobId, file, ingestCsv ? ',' : ' ', bulkLoadJob, taskExecutor));
+        log.info(String.format("Bulk load result: %s", result));
+      } else {
+        try (CustomerFileReader reader = new CustomerFileReader(file, ingestCsv ? ',' : ' ')) {
+          schemaManager.bulkLoad(() -> CustomerService.insertDataStreaming(reader, ingestChunkSize, custService));
+        }
+      }
+      
+    } catch (Exception e) {
+      log.error("startFileProcess(): " + e.getMessage(), e);
+    }
+    
+    log.info("startFileProcess() end");
+  }
+  
+  
+  public void startExport(Path file) {
+    log.info(String.format("startExport() start: file=%s", file));
+    
+    try {
+      ScanProgress progress = CustomerScanner.export(
+          file, ingestCsv ? ',' : ' ', exportOrdered, customerScanner, taskExecutor);
+      log.info(String.format("Export result: %s", progress));
+      
+    } catch (Exception e) {
+      log.error("startExport(): " + e.getMessage(), e);
+    }
+    
+    log.info("startExport() end");
+  }
+  
+  
+  public void startConcurrentProcess() {
+    log.info("startConcurrentProcess() start");
+    
+    try {
+      final String[] originalNames = new String[] { "John Woo", "Jeff Dean", "Josh Bloch", "Josh Long" };
+      log.info(String.format("originalNames=%s", Arrays.toString(originalNames)));
+
+      List<Object[]> splitNames = Arrays.asList(originalNames).stream()
+          .map(name -> name.split(" "))
+          .collect(Collectors.toList());
+
+      dataLogger.rows(log, "Source data", splitNames);
+
+      BulkLoadResult result = null;
+      if (insertRecovery) {
+        result = ResilientInserter.insertDataResilient(splitNames, resilientInserter, taskExecutor);
+      } else if (loaderExecutor.getMode() == LoaderExecutor.Mode.VIRTUAL) {
+        result = ConcurrentCustomerService.insertDataStructured(splitNames, conCustService, loaderExecutor);
+      } else {
+        result = ConcurrentCustomerService.insertDataConcurrently(splitNames, conCustService, taskExecutor);
+      }
+      log.info(String.format("Insert result: %s", result));
+      
+      final String searchFirstName = "Josh";
+      log.info(String.format("Customers with firstName='%s': ", searchFirstName));
+      conCustService.findByFirstName(searchFirstName);
+      
+      List<String> searchFirstNames = Arrays.asList("Josh", "Jeff", "Jane");
+      Map<String, List<Customer>> customers =
+          ConcurrentCustomerService.findByFirstNames(searchFirstNames, conCustService, loaderExecutor);
+      customers.forEach((firstName, found) -> log.info(String.format("Customers with firstName='%s': %s",
+          firstName, found)));
+
+    } catch (Exception e) {
+      log.error("startConcurrentProcess(): " + e.getMessage(), e);
+    }
+    
+    log.info("startConcurrentProcess() end");
+  }
+  
+  
+  public void startAsyncProcess() {
+    log.info("startAsyncProcess() start");
+    
+    try {
+      final String[] originalNames = new String[] { "John Woo", "Jeff Dean", "Josh Bloch", "Josh Long" };
+      log.info(String.format("originalNames=%s", Arrays.toString(originalNames)));
+
+      List<Object[]> splitNames = Arrays.asList(originalNames).stream()
+          .map(name -> name.split(" "))
+          .collect(Collectors.toList());
+
+      dataLogger.rows(log, "Source data", splitNames);
+
+      int chunkSize = BulkLoader.chunkSize(
+          splitNames.size(), taskExecutor.getMaxPoolSize(), asyncCustService.getBatchSize());
+      BulkLoadResult result = AsyncCustomerService.insertDataPipelined(
+          splitNames.iterator(), chunkSize, taskExecutor.getMaxPoolSize(), asyncCustService).get();
+      log.info(String.format("Insert result: %s", result));
+      
+      final String searchFirstName = "Josh";
+      log.info(String.format("Customers with firstName='%s': ", searchFirstName));
+      asyncCustService.findByFirstName(searchFirstName);
+
+    } catch (Exception e) {
+      log.error("startAsyncProcess(): " + e.getMessage(), e);
+    }
+    
+    log.info("startAsyncProcess() end");
+  }
+}
@@ -1,152 +1,261 @@
-package hello;
-
-import java.sql.BatchUpdateException;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
-
-@Service
-public class AsyncCustomerService {
-  
-  private static final Logger log = LoggerFactory.getLogger(AsyncCustomerService.class);
-  
-  @Autowired
-  JdbcTemplate jdbcTemplate;
-  
-//  @Autowired
-//  ThreadPoolTaskExecutor taskExecutor;
-  
-  @Transactional(isolation=Isolation.READ_COMMITTED)
-  public void createTable() 
-  throws Exception {
-    log.info("createTable() start");
-    
-    try {
-      try {
-        jdbcTemplate.execute("drop table common.customers");
-      } catch (Exception e) {
-        log.error("Failed to drop table. Continue processing.");
-      }
-      
-      jdbcTemplate.execute("create table common.customers ("
-          + "ID BIGINT  NOT NULL  GENERATED ALWAYS AS IDENTITY (START WITH 1001, INCREMENT BY 1, NO CACHE ) , "
-          + "FIRST_NAME VARCHAR(255) , "
-          + "LAST_NAME VARCHAR(255) , "
-          + "PRIMARY KEY (ID)"
-          + ")");
-      
-    } catch (DataAccessException e) {
-      log.error("createTable(): DataAccessException", e);
-      throw e;
-    }
-    
-    log.info("createTable() end");
-    
-    return;
-  }
-  
-  public static void insertDataAsync(List<Object[]> splitNames, AsyncCustomerService asyncCustomerService) 
-  throws Exception {
-    log.info("insertDataAsync() start");
-    
-    List<CompletableFuture<Boolean>> taskList = new ArrayList<CompletableFuture<Boolean>>();
-    CompletableFuture<Boolean> cf = null;
-    
-    cf = asyncCustomerService.insertData(splitNames.subList(0, 2));
-    taskList.add(cf);
-    
-    cf = asyncCustomerService.insertData(splitNames.subList(2, 4));
-    taskList.add(cf);
-    
-    for (int i = 0; i < taskList.size(); i++) {
-      cf = taskList.get(i);
-      // blocks current thread until result is returned by tempTask
-      cf.join();
-    }
-    
-    log.info("insertDataAsync() end");
-  }
-
-  @Transactional(isolation=Isolation.READ_COMMITTED)
-  @Async
-  public CompletableFuture<Boolean> insertData(List<Object[]> splitNames) 
-  throws Exception {
-    log.info("insertData() start");
-    
-    Boolean result = Boolean.FALSE;
-    final String strSqlInsert = "insert into common.customers(FIRST_NAME, LAST_NAME) values (?, ?)";
-
-    try {
-      splitNames.forEach(name -> log.info(String.format("Working data: %s, %s", name[0], name[1])));
-      
-      int[][] updateCounts = jdbcTemplate.batchUpdate(
-          strSqlInsert, splitNames, 3, 
-          new ParameterizedPreparedStatementSetter<Object[]>() {
-
-            @Override
-            public void setValues(PreparedStatement ps, Object[] argument) throws SQLException {
-              int i = 1, j = 0;
-              ps.setString(i++, String.valueOf((argument[j++])));
-              ps.setString(i++, String.valueOf((argument[j++])));
-            }
-            
-          });
-      log.info(String.format("Update counts: %s", Arrays.deepToString(updateCounts)));
-      result = Boolean.TRUE;
-    } catch (DataAccessException e) {
-      if (e.contains(BatchUpdateException.class)) {
-        SQLException be = (SQLException)e.getCause();
-        do {
-          log.error("insertData(): SQLException", be);
-          be = be.getNextException();
-        } while (be != null);
-      } else {
-        log.error("insertData(): DataAccessException", e);
-      }
-      throw e;
-    } catch (Exception e) {
-      log.error("insertData(): Exception", e);
-      throw e;
-    }
-    
-    log.info("insertData() end");
-    
-    return CompletableFuture.completedFuture(result);
-  }
-  
-  
-  @Transactional(propagation=Propagation.SUPPORTS)
-  public void findByFirstName(String firstName)
-  throws Exception {
-    log.info("findByFirstName() start");
-    
-    try {
-      final String strSqlSelect = "select * from common.customers where FIRST_NAME = ?";
-      
-      jdbcTemplate.query(
-          strSqlSelect, new Object[] { firstName },
-          (rs, rowNo) -> new Customer(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name"))
-        ).forEach(customer -> log.info(customer.toString()));
-    } catch (Exception e) {
-      log.error("findByFirstName(): Exception", e);
-      throw e;
-    }
-    
-    log.info("findByFirstName() end");
-  }
-  
-}
+package hello;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The asynchronous execution strategy over {@link CustomerRepository}: inserts are @Async calls on pool-01 that
+ * return CompletableFutures, which the static methods compose into loads and pipelines.
+ */
+@Service
+public class AsyncCustomerService {
+  
+  private static final Logger log = LoggerFactory.getLogger(AsyncCustomerService.class);
+  
+  static final String METRICS_TAG = "async";
+  
+  @Autowired
+  CustomerRepository customerRepository;
+  
+  @Autowired
+  DataLogger dataLogger;
+  
+  @Autowired
+  DeadLetterSink deadLetterSink;
+  
+  // reads and prepares the chunks of insertDataPipelined(), so pool-01 only runs inserts; never the common pool
+  private final ExecutorService pipelineExecutor = Executors.newSingleThreadExecutor(pipelineThreadFactory());
+  
+  private static ThreadFactory pipelineThreadFactory() {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pipeline-");
+    threadFactory.setDaemon(true);
+    return threadFactory;
+  }
+  
+  public int getBatchSize() {
+    return customerRepository.getBatchSize();
+  }
+  
+  public Executor getPipelineExecutor() {
+    return pipelineExecutor;
+  }
+  
+//  @Autowired
+//  ThreadPoolTaskExecutor taskExecutor;
+  
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void createTable() 
+  throws Exception {
+    customerRepository.createTable(METRICS_TAG);
+  }
+  
+  public static BulkLoadResult insertDataAsync(
+      List<Object[]> splitNames, AsyncCustomerService asyncCustomerService, ThreadPoolTaskExecutor taskExecutor) 
+  throws Exception {
+    log.info("insertDataAsync() start");
+    
+    BulkLoader loader = BulkLoader.forExecutor(taskExecutor, asyncCustomerService.getBatchSize(), splitNames.size());
+    BulkLoadResult result = loader.load(splitNames, 
+        (chunkNo, chunk) -> asyncCustomerService.insertData(chunk).handle(
+            (inserted, e) -> e == null 
+                ? ChunkResult.succeeded(chunkNo, chunk.size()) 
+                : ChunkResult.failed(chunkNo, chunk.size(), e)));
+    
+    log.info("insertDataAsync() end");
+    
+    return result;
+  }
+
+  /**
+   * Loads the rows through a pipeline of {@code lanes} chains of stages, each chain:
+   * <pre>
+   * prepare(N) --thenCompose--&gt; insert(N) on pool-01 --thenCompose--&gt; insert(N+1) ...
+   *               \-- prepare(N+1) on the pipeline thread, while insert(N) is in the database
+   * </pre>
+   * Preparing a chunk reads it from the iterator and validates it; rows the table cannot take (no name, name too
+   * long) go to the {@link DeadLetterSink} instead of failing the chunk. Each lane holds at most two chunks, and the
+   * iterator is only read by the pipeline thread.
+   * <p>
+   * Returns at once; the future completes with the result of the whole load, so that callers can compose further
+   * stages on it.
+   */
+  public static CompletableFuture<BulkLoadResult> insertDataPipelined(
+      Iterator<Object[]> rows, int chunkSize, int lanes, AsyncCustomerService asyncCustomerService) {
+    log.info(String.format("insertDataPipelined() start: chunkSize=%s, lanes=%s", chunkSize, lanes));
+    
+    BulkLoadResult result = new BulkLoadResult();
+    AtomicInteger chunkNo = new AtomicInteger();
+    Executor pipeline = asyncCustomerService.getPipelineExecutor();
+    
+    CompletableFuture<?>[] laneResults = new CompletableFuture<?>[lanes];
+    for (int i = 0; i < lanes; i++) {
+      CompletableFuture<PreparedChunk> first = CompletableFuture.supplyAsync(
+          () -> asyncCustomerService.prepare(rows, chunkSize, chunkNo), pipeline);
+      laneResults[i] = lane(first, rows, chunkSize, chunkNo, result, asyncCustomerService);
+    }
+    
+    return CompletableFuture.allOf(laneResults).thenApply(v -> {
+      log.info(String.format("insertDataPipelined() end: %s", result));
+      return result;
+    });
+  }
+  
+  private static CompletableFuture<Void> lane(
+      CompletableFuture<PreparedChunk> prepared, Iterator<Object[]> rows, int chunkSize, AtomicInteger chunkNo, 
+      BulkLoadResult result, AsyncCustomerService asyncCustomerService) {
+    Executor pipeline = asyncCustomerService.getPipelineExecutor();
+    
+    // async on the pipeline thread, so that long loads do not nest stages on the stack
+    return prepared.thenComposeAsync(chunk -> {
+      if (chunk == null) {
+        return CompletableFuture.completedFuture(null);
+      }
+      
+      CompletableFuture<ChunkResult> inserted = insert(chunk, asyncCustomerService);
+      CompletableFuture<PreparedChunk> next = CompletableFuture.supplyAsync(
+          () -> asyncCustomerService.prepare(rows, chunkSize, chunkNo), pipeline);
+      
+      return inserted
+          .thenAccept(result::add)
+          .thenCompose(v -> lane(next, rows, chunkSize, chunkNo, result, asyncCustomerService));
+    }, pipeline);
+  }
+  
+  private static CompletableFuture<ChunkResult> insert(PreparedChunk chunk, AsyncCustomerService asyncCustomerService) {
+    CompletableFuture<CustomerBatch> inserted = null;
+    if (chunk.batch.isEmpty()) {
+      inserted = CompletableFuture.completedFuture(chunk.batch);
+    } else {
+      try {
+        inserted = asyncCustomerService.insertData(chunk.batch);
+      } catch (Exception e) {
+        // e.g. pool-01 rejected the task
+        inserted = new CompletableFuture<CustomerBatch>();
+        inserted.completeExceptionally(e);
+      }
+    }
+    
+    return inserted.handle((batch, e) -> ChunkResult.recovered(
+        chunk.chunkNo, chunk.rows, e == null ? chunk.batch.size() : 0, 0, chunk.rejected, e));
+  }
+  
+  static class PreparedChunk {
+    final int chunkNo;
+    final int rows;
+    final int rejected;
+    final CustomerBatch batch;
+    
+    PreparedChunk(int chunkNo, int rows, int rejected, CustomerBatch batch) {
+      this.chunkNo = chunkNo;
+      this.rows = rows;
+      this.rejected = rejected;
+      this.batch = batch;
+    }
+  }
+  
+  /**
+   * Reads and validates the next chunk, or returns null at the end of the rows. Runs on the pipeline thread only.
+   * Not private, so that calls through the proxy reach this bean.
+   */
+  PreparedChunk prepare(Iterator<Object[]> rows, int chunkSize, AtomicInteger chunkNo) {
+    if (!rows.hasNext()) {
+      return null;
+    }
+    
+    int no = chunkNo.getAndIncrement();
+    int count = 0;
+    int rejected = 0;
+    CustomerBatch batch = new CustomerBatch(chunkSize);
+    while (count < chunkSize && rows.hasNext()) {
+      Object[] name = rows.next();
+      count++;
+      String firstName = name.length > 0 && name[0] != null ? String.valueOf(name[0]) : null;
+      String lastName = name.length > 1 && name[1] != null ? String.valueOf(name[1]) : null;
+      if (!CustomerSchema.isValidName(firstName) || !CustomerSchema.isValidName(lastName)) {
+        deadLetterSink.accept(no, firstName, lastName, 
+            new IllegalArgumentException("Name missing or longer than " + CustomerSchema.NAME_LENGTH));
+        rejected++;
+        continue;
+      }
+      batch.add(firstName, lastName);
+    }
+    
+    return new PreparedChunk(no, count, rejected, batch);
+  }
+  
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  @Async
+  public CompletableFuture<Boolean> insertData(List<Object[]> splitNames) 
+  throws Exception {
+    dataLogger.rows(log, "Working data", splitNames);
+    
+    customerRepository.insert(CustomerBatch.of(splitNames), customerRepository.getDefaultMode(), METRICS_TAG);
+    
+    return CompletableFuture.completedFuture(Boolean.TRUE);
+  }
+  
+  /**
+   * Inserts the batch on pool-01. The future completes with the batch, with its IDs if they are client assigned, or
+   * exceptionally with the failure.
+   */
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  @Async
+  public CompletableFuture<CustomerBatch> insertData(CustomerBatch batch) 
+  throws Exception {
+    customerRepository.insert(batch, customerRepository.getDefaultMode(), METRICS_TAG);
+    
+    return CompletableFuture.completedFuture(batch);
+  }
+  
+  @PreDestroy
+  public void shutdownPipeline() {
+    pipelineExecutor.shutdown();
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public void findByFirstName(String firstName)
+  throws Exception {
+    findByFirstName(firstName, customer -> log.info(customer.toString()));
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public long findByFirstName(String firstName, Consumer<Customer> consumer)
+  throws Exception {
+    return customerRepository.findByFirstName(firstName, consumer, METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public List<Customer> findByFirstNameCached(String firstName)
+  throws Exception {
+    return customerRepository.findByFirstNameCached(firstName, METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public List<Customer> findByFirstName(String firstName, long afterId, int limit)
+  throws Exception {
+    return customerRepository.findByFirstName(firstName, afterId, limit, METRICS_TAG);
+  }
+  
+}
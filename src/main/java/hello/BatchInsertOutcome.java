@@ -0,0 +1,58 @@
+package hello;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of {@link CustomerService#insertDataPartial(CustomerBatch, int)}: the number of rows written, the number of
+ * rows an upsert found in the table already (customer.insert.mode=UPSERT) and the rows the database rejected, each
+ * with the exception reported for it.
+ */
+public class BatchInsertOutcome {
+  private int rowsInserted;
+  private int rowsMatched;
+  private final CustomerBatch failedRows;
+  private final List<SQLException> causes = new ArrayList<SQLException>();
+
+  BatchInsertOutcome(int capacity) {
+    super();
+    this.failedRows = new CustomerBatch(capacity);
+  }
+
+  void inserted(int rows) {
+    rowsInserted += rows;
+  }
+
+  void matched(int rows) {
+    rowsMatched += rows;
+  }
+
+  void failed(String firstName, String lastName, SQLException cause) {
+    failedRows.add(firstName, lastName);
+    causes.add(cause);
+  }
+
+  public int getRowsInserted() {
+    return rowsInserted;
+  }
+
+  public int getRowsMatched() {
+    return rowsMatched;
+  }
+
+  public CustomerBatch getFailedRows() {
+    return failedRows;
+  }
+
+  public SQLException getCause(int failedRow) {
+    return causes.get(failedRow);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BatchInsertOutcome [rowsInserted=%s, rowsMatched=%s, rowsFailed=%s]",
+        rowsInserted, rowsMatched, failedRows.size());
+  }
+
+}
@@ -0,0 +1,86 @@
+package hello;
+
+/**
+ * Finds the batch size with the best insert throughput by hill climbing: the size is doubled (or halved) after every
+ * {@link #WINDOW} calls while rows/s improves, turned around when it drops by more than 5%, and fixed at the best
+ * size seen after the second turn.
+ */
+class BatchSizeTuner {
+
+  static final int WINDOW = 4;
+
+  private final int minBatchSize;
+
+  private final int maxBatchSize;
+
+  private int batchSize;
+
+  private boolean growing = true;
+
+  private int turns;
+
+  private long windowRows;
+
+  private long windowNanos;
+
+  private int windowCalls;
+
+  private double lastThroughput;
+
+  private double bestThroughput;
+
+  private int bestBatchSize;
+
+  BatchSizeTuner(int initialBatchSize, int minBatchSize, int maxBatchSize) {
+    super();
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.batchSize = Math.max(Math.min(initialBatchSize, maxBatchSize), minBatchSize);
+    this.bestBatchSize = batchSize;
+  }
+
+  synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  synchronized boolean isSettled() {
+    return turns >= 2;
+  }
+
+  synchronized void record(int rows, long elapsedNanos) {
+    if (isSettled()) {
+      return;
+    }
+    windowRows += rows;
+    windowNanos += elapsedNanos;
+    if (++windowCalls < WINDOW) {
+      return;
+    }
+
+    double throughput = windowRows / (double) Math.max(windowNanos, 1);
+    windowRows = 0;
+    windowNanos = 0;
+    windowCalls = 0;
+
+    if (throughput > bestThroughput) {
+      bestThroughput = throughput;
+      bestBatchSize = batchSize;
+    }
+    int next = growing ? batchSize * 2 : batchSize / 2;
+    if (throughput < lastThroughput * 0.95 || next > maxBatchSize || next < minBatchSize) {
+      growing = !growing;
+      turns++;
+      next = growing ? batchSize * 2 : batchSize / 2;
+    }
+    lastThroughput = throughput;
+
+    batchSize = isSettled() ? bestBatchSize : Math.max(Math.min(next, maxBatchSize), minBatchSize);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("BatchSizeTuner [batchSize=%s, settled=%s, bestRowsPerMs=%.1f]",
+        batchSize, isSettled(), bestThroughput * 1000000);
+  }
+
+}
@@ -0,0 +1,177 @@
+package hello;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bulk-load mode for initial and nightly loads of a customer file, resumable after a crash:
+ * <ul>
+ * <li>The file is split into customer.bulk-load.partitions byte ranges (default: one per pool-01 thread), loaded in
+ * parallel on pool-01.</li>
+ * <li>Each partition commits every customer.bulk-load.commit-rows rows through
+ * {@link CustomerService#insertData(CustomerBatch, LoadCheckpoint, LoadCheckpoint)}, which records the file offset
+ * reached in common.load_checkpoint in the same transaction.</li>
+ * <li>Running the same job again (same job ID and file) continues each partition from its checkpoint; a completed
+ * job loads nothing.</li>
+ * <li>With customer.bulk-load.staged=true the rows are committed to the stage table and published to
+ * common.customers in one transaction when all partitions are loaded, so readers never see a partial load.</li>
+ * </ul>
+ * Run it inside {@link SchemaManager#bulkLoad(java.util.concurrent.Callable)} to defer the index builds.
+ */
+@Component
+public class BulkLoadJob {
+
+  private static final Logger log = LoggerFactory.getLogger(BulkLoadJob.class);
+
+  @Autowired
+  CustomerService custService;
+
+  @Autowired
+  CustomerCache customerCache;
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Value("${customer.bulk-load.partitions:0}")
+  int partitions;
+
+  @Value("${customer.bulk-load.commit-rows:10000}")
+  int commitRows;
+
+  @Value("${customer.bulk-load.staged:false}")
+  boolean staged;
+
+  /**
+   * A job ID for the file as it is now: a changed file starts a new job instead of resuming the old one.
+   */
+  public static String jobId(Path file)
+  throws IOException {
+    return String.format("%s:%s:%s",
+        file.getFileName(), Files.size(file), Files.getLastModifiedTime(file).toMillis());
+  }
+
+  public static BulkLoadResult load(
+      String jobId, Path file, char separator, BulkLoadJob job, ThreadPoolTaskExecutor taskExecutor)
+  throws Exception {
+    log.info(String.format("load() start: jobId=%s", jobId));
+
+    int partitions = job.partitions > 0 ? job.partitions : Math.max(taskExecutor.getMaxPoolSize(), 1);
+    List<LoadCheckpoint> checkpoints = job.plan(jobId, file, partitions);
+
+    List<Future<ChunkResult>> futures = new ArrayList<Future<ChunkResult>>();
+    for (LoadCheckpoint checkpoint : checkpoints) {
+      if (checkpoint.getStatus() == LoadCheckpoint.Status.LOADING) {
+        futures.add(taskExecutor.submit(() -> job.loadPartition(checkpoint, file, separator)));
+      }
+    }
+
+    BulkLoadResult result = new BulkLoadResult();
+    for (Future<ChunkResult> future : futures) {
+      result.add(future.get());
+    }
+    if (result.isSuccess()) {
+      job.publish(jobId);
+    }
+
+    log.info(String.format("load() end: %s", result));
+
+    return result;
+  }
+
+  /**
+   * The checkpoints of the job, created with {@code partitions} equal byte ranges if the job is new.
+   */
+  List<LoadCheckpoint> plan(String jobId, Path file, int partitions)
+  throws IOException {
+    long size = Files.size(file);
+    List<LoadCheckpoint> checkpoints = LoadCheckpoints.find(jdbcTemplate, jobId);
+
+    if (checkpoints.isEmpty()) {
+      long loadId = staged ? StagingInsert.newLoadId() : 0;
+      for (int i = 0; i < partitions; i++) {
+        checkpoints.add(LoadCheckpoint.start(jobId, i, loadId, size * i / partitions, size * (i + 1) / partitions));
+      }
+      try {
+        LoadCheckpoints.insert(jdbcTemplate, checkpoints);
+        log.info(String.format("plan(): new job %s, %s partitions of %s bytes", jobId, partitions, size));
+      } catch (DuplicateKeyException e) {
+        // started by another node at the same time
+        checkpoints = LoadCheckpoints.find(jdbcTemplate, jobId);
+      }
+    } else {
+      log.info(String.format("plan(): resuming job %s", jobId));
+    }
+
+    if (checkpoints.get(checkpoints.size() - 1).getEndOffset() != size) {
+      throw new IllegalStateException(String.format("File %s has changed since job %s started", file, jobId));
+    }
+    return checkpoints;
+  }
+
+  /**
+   * Loads the rest of a partition, one transaction per commit-rows rows. Never throws: a failure ends the partition
+   * at its last commit, and the job can be run again.
+   */
+  ChunkResult loadPartition(LoadCheckpoint checkpoint, Path file, char separator) {
+    log.info(String.format("loadPartition() start: %s", checkpoint));
+
+    int rows = 0;
+    LoadCheckpoint from = checkpoint;
+    try (CustomerFileReader reader = new CustomerFileReader(
+        file, separator, checkpoint.getNextOffset(), checkpoint.getEndOffset())) {
+      CustomerBatch batch = new CustomerBatch(commitRows);
+      boolean loaded = false;
+      while (!loaded) {
+        reader.read(batch);
+        loaded = !reader.hasNext();
+        LoadCheckpoint to = from.advance(reader.getOffset(), batch.size(), loaded);
+        custService.insertData(batch, from, to);
+        rows += batch.size();
+        from = to;
+        batch.clear();
+      }
+    } catch (Exception e) {
+      log.error(String.format("loadPartition(): stopped at %s", from), e);
+      return ChunkResult.partial(checkpoint.getPartitionNo(), rows, e);
+    }
+
+    log.info(String.format("loadPartition() end: %s", from));
+
+    return ChunkResult.succeeded(checkpoint.getPartitionNo(), rows);
+  }
+
+  /**
+   * Publishes a staged job once all its partitions are loaded, and drops the cached lookups.
+   */
+  void publish(String jobId)
+  throws Exception {
+    List<LoadCheckpoint> checkpoints = LoadCheckpoints.find(jdbcTemplate, jobId);
+    for (LoadCheckpoint checkpoint : checkpoints) {
+      if (checkpoint.getStatus() != LoadCheckpoint.Status.LOADED) {
+        return;
+      }
+    }
+    if (checkpoints.get(0).isStaged()) {
+      custService.publishLoad(jobId, checkpoints.get(0).getLoadId());
+    }
+    customerCache.invalidateAll();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BulkLoadJob [partitions=%s, commitRows=%s, staged=%s]", partitions, commitRows, staged);
+  }
+
+}
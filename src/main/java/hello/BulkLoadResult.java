@@ -0,0 +1,55 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BulkLoadResult {
+  private int chunks;
+  private long rowsInserted;
+  private long rowsFailed;
+  private long rowsDeadLettered;
+  private final List<ChunkResult> failures = new ArrayList<ChunkResult>();
+  
+  synchronized void add(ChunkResult chunkResult) {
+    chunks++;
+    rowsInserted += chunkResult.getRowsInserted();
+    rowsFailed += chunkResult.getRowsFailed();
+    rowsDeadLettered += chunkResult.getRowsDeadLettered();
+    if (!chunkResult.isSuccess()) {
+      failures.add(chunkResult);
+    }
+  }
+
+  public synchronized int getChunks() {
+    return chunks;
+  }
+
+  public synchronized long getRowsInserted() {
+    return rowsInserted;
+  }
+
+  public synchronized long getRowsFailed() {
+    return rowsFailed;
+  }
+
+  public synchronized long getRowsDeadLettered() {
+    return rowsDeadLettered;
+  }
+
+  public synchronized List<ChunkResult> getFailures() {
+    return Collections.unmodifiableList(new ArrayList<ChunkResult>(failures));
+  }
+  
+  public synchronized boolean isSuccess() {
+    return failures.isEmpty();
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format(
+        "BulkLoadResult [chunks=%s, rowsInserted=%s, rowsFailed=%s, rowsDeadLettered=%s, failedChunks=%s]",
+        chunks, rowsInserted, rowsFailed, rowsDeadLettered, failures.size());
+  }
+  
+}
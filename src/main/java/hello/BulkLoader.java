@@ -0,0 +1,142 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Splits the input rows into chunks of whole JDBC batches and hands them to a {@link ChunkInserter},
+ * keeping at most {@code maxInFlight} chunks submitted but not yet completed.
+ */
+public class BulkLoader {
+
+  private static final Logger log = LoggerFactory.getLogger(BulkLoader.class);
+
+  // upper bound of JDBC batches per chunk, so that very large loads are spread over many short transactions
+  static final int MAX_BATCHES_PER_CHUNK = 1000;
+
+  public interface ChunkInserter {
+    CompletableFuture<ChunkResult> submit(int chunkNo, List<Object[]> chunk) throws Exception;
+  }
+
+  private final int chunkSize;
+
+  private final int maxInFlight;
+
+  public BulkLoader(int chunkSize, int maxInFlight) {
+    super();
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+    }
+    this.chunkSize = chunkSize;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Sizes the chunks so that all threads of the executor get work, and allows one extra queued chunk per thread.
+   *
+   * @param totalRows number of rows to load, or a value &lt;= 0 if unknown (e.g. when loading from an iterator)
+   */
+  public static BulkLoader forExecutor(ThreadPoolTaskExecutor taskExecutor, int batchSize, int totalRows) {
+    int poolSize = Math.max(taskExecutor.getMaxPoolSize(), 1);
+    return new BulkLoader(chunkSize(totalRows, poolSize, batchSize), poolSize * 2);
+  }
+
+  static int chunkSize(int totalRows, int poolSize, int batchSize) {
+    int maxChunkSize = batchSize * MAX_BATCHES_PER_CHUNK;
+    if (totalRows <= 0) {
+      return maxChunkSize;
+    }
+
+    int rowsPerThread = (totalRows + poolSize - 1) / poolSize;
+    int batchesPerThread = (rowsPerThread + batchSize - 1) / batchSize;
+    return Math.min(batchesPerThread * batchSize, maxChunkSize);
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  public BulkLoadResult load(List<Object[]> rows, ChunkInserter inserter)
+  throws InterruptedException {
+    log.info(String.format("load() start: rows=%s, chunkSize=%s, maxInFlight=%s", rows.size(), chunkSize, maxInFlight));
+
+    BulkLoadResult result = new BulkLoadResult();
+    Semaphore permits = new Semaphore(maxInFlight);
+
+    int chunkNo = 0;
+    for (int from = 0; from < rows.size(); from += chunkSize) {
+      List<Object[]> chunk = rows.subList(from, Math.min(from + chunkSize, rows.size()));
+      submit(chunkNo++, chunk, inserter, permits, result);
+    }
+    // all permits are back once every submitted chunk has completed
+    permits.acquire(maxInFlight);
+
+    log.info(String.format("load() end: %s", result));
+    return result;
+  }
+
+  public BulkLoadResult load(Iterator<Object[]> rows, ChunkInserter inserter)
+  throws InterruptedException {
+    log.info(String.format("load() start: chunkSize=%s, maxInFlight=%s", chunkSize, maxInFlight));
+
+    BulkLoadResult result = new BulkLoadResult();
+    Semaphore permits = new Semaphore(maxInFlight);
+
+    int chunkNo = 0;
+    while (rows.hasNext()) {
+      List<Object[]> chunk = new ArrayList<Object[]>(chunkSize);
+      while (rows.hasNext() && chunk.size() < chunkSize) {
+        chunk.add(rows.next());
+      }
+      submit(chunkNo++, chunk, inserter, permits, result);
+    }
+    permits.acquire(maxInFlight);
+
+    log.info(String.format("load() end: %s", result));
+    return result;
+  }
+
+  private void submit(final int chunkNo, final List<Object[]> chunk, ChunkInserter inserter, final Semaphore permits,
+      final BulkLoadResult result)
+  throws InterruptedException {
+    // blocks the producer while maxInFlight chunks are still running or queued
+    permits.acquire();
+
+    CompletableFuture<ChunkResult> cf = null;
+    try {
+      cf = inserter.submit(chunkNo, chunk);
+    } catch (Exception e) {
+      log.error(String.format("submit(): chunk %s rejected", chunkNo), e);
+      result.add(ChunkResult.failed(chunkNo, chunk.size(), e));
+      permits.release();
+      return;
+    }
+
+    cf.whenComplete((chunkResult, e) -> {
+      try {
+        if (e != null) {
+          log.error(String.format("submit(): chunk %s failed", chunkNo), e);
+          result.add(ChunkResult.failed(chunkNo, chunk.size(), e));
+        } else {
+          result.add(chunkResult);
+        }
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+}
@@ -0,0 +1,86 @@
+package hello;
+
+public class ChunkResult {
+  private final int chunkNo;
+  private final int rows;
+  private final int rowsInserted;
+  private final int rowsRetried;
+  private final int rowsDeadLettered;
+  private final Throwable failure;
+  
+  private ChunkResult(
+      int chunkNo, int rows, int rowsInserted, int rowsRetried, int rowsDeadLettered, Throwable failure) {
+    super();
+    this.chunkNo = chunkNo;
+    this.rows = rows;
+    this.rowsInserted = rowsInserted;
+    this.rowsRetried = rowsRetried;
+    this.rowsDeadLettered = rowsDeadLettered;
+    this.failure = failure;
+  }
+  
+  public static ChunkResult succeeded(int chunkNo, int rows) {
+    return new ChunkResult(chunkNo, rows, rows, 0, 0, null);
+  }
+  
+  public static ChunkResult failed(int chunkNo, int rows, Throwable failure) {
+    return new ChunkResult(chunkNo, rows, 0, 0, 0, failure);
+  }
+  
+  /**
+   * Result of a chunk that failed after {@code rowsInserted} rows had been committed, e.g. a {@link BulkLoadJob}
+   * partition. The number of rows not loaded is unknown.
+   */
+  public static ChunkResult partial(int chunkNo, int rowsInserted, Throwable failure) {
+    return new ChunkResult(chunkNo, rowsInserted, rowsInserted, 0, 0, failure);
+  }
+  
+  /**
+   * Result of a chunk loaded by {@link ResilientInserter}: some rows may have been retried or dead-lettered, and
+   * {@code failure} is set only if the chunk had to be given up with rows neither inserted nor dead-lettered.
+   */
+  public static ChunkResult recovered(
+      int chunkNo, int rows, int rowsInserted, int rowsRetried, int rowsDeadLettered, Throwable failure) {
+    return new ChunkResult(chunkNo, rows, rowsInserted, rowsRetried, rowsDeadLettered, failure);
+  }
+
+  public int getChunkNo() {
+    return chunkNo;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public int getRowsInserted() {
+    return rowsInserted;
+  }
+
+  public int getRowsFailed() {
+    return rows - rowsInserted;
+  }
+
+  public int getRowsRetried() {
+    return rowsRetried;
+  }
+
+  public int getRowsDeadLettered() {
+    return rowsDeadLettered;
+  }
+
+  public Throwable getFailure() {
+    return failure;
+  }
+  
+  public boolean isSuccess() {
+    return failure == null && rowsInserted == rows;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ChunkResult [chunkNo=%s, rows=%s, rowsInserted=%s, rowsRetried=%s, rowsDeadLettered=%s, failure=%s]", 
+        chunkNo, rows, rowsInserted, rowsRetried, rowsDeadLettered, failure);
+  }
+  
+}
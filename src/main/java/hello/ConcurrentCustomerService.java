@@ -1,154 +1,287 @@
-package hello;
-
-import java.sql.BatchUpdateException;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.FutureTask;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
-
-@Service
-public class ConcurrentCustomerService {
-  
-  private static final Logger log = LoggerFactory.getLogger(ConcurrentCustomerService.class);
-  
-  @Autowired
-  JdbcTemplate jdbcTemplate;
-  
-//  @Autowired
-//  ThreadPoolTaskExecutor taskExecutor;
-  
-  @Transactional(isolation=Isolation.READ_COMMITTED)
-  public void createTable() 
-  throws Exception {
-    log.info("createTable() start");
-    
-    try {
-      try {
-        jdbcTemplate.execute("drop table common.customers");
-      } catch (Exception e) {
-        log.error("Failed to drop table. Continue processing.");
-      }
-      
-      jdbcTemplate.execute("create table common.customers ("
-          + "ID BIGINT  NOT NULL  GENERATED ALWAYS AS IDENTITY (START WITH 1001, INCREMENT BY 1, NO CACHE ) , "
-          + "FIRST_NAME VARCHAR(255) , "
-          + "LAST_NAME VARCHAR(255) , "
-          + "PRIMARY KEY (ID)"
-          + ")");
-      
-    } catch (DataAccessException e) {
-      log.error("createTable(): DataAccessException", e);
-      throw e;
-    }
-    
-    log.info("createTable() end");
-    
-    return;
-  }
-  
-  public static void insertDataConcurrently(
-      List<Object[]> splitNames, ConcurrentCustomerService conCustomerService, ThreadPoolTaskExecutor taskExecutor) 
-  throws Exception {
-    log.info("insertDataConcurrently() start");
-    
-    List<FutureTask<Boolean>> taskList = new ArrayList<FutureTask<Boolean>>();
-    Callable<Boolean> callable = null;
-    FutureTask<Boolean> task = null;
-    
-    callable = new CallableInsertTask(splitNames.subList(0, 2), conCustomerService);
-    task = new FutureTask<>(callable);
-    taskList.add(task);
-    taskExecutor.submit(task);
-    
-    callable = new CallableInsertTask(splitNames.subList(2, 4), conCustomerService);
-    task = new FutureTask<>(callable);
-    taskList.add(task);
-    taskExecutor.submit(task);
-    
-    for (int i = 0; i < taskList.size(); i++) {
-      task = taskList.get(i);
-      // blocks current thread until result is returned by tempTask
-      task.get();
-    }
-    
-    log.info("insertDataConcurrently() end");
-  }
-
-  @Transactional(isolation=Isolation.READ_COMMITTED)
-  public void insertData(List<Object[]> splitNames) 
-  throws Exception {
-    log.info("insertData() start");
-    
-    final String strSqlInsert = "insert into common.customers(FIRST_NAME, LAST_NAME) values (?, ?)";
-
-    try {
-      splitNames.forEach(name -> log.info(String.format("Working data: %s, %s", name[0], name[1])));
-      
-      int[][] updateCounts = jdbcTemplate.batchUpdate(
-          strSqlInsert, splitNames, 3, 
-          new ParameterizedPreparedStatementSetter<Object[]>() {
-
-            @Override
-            public void setValues(PreparedStatement ps, Object[] argument) throws SQLException {
-              int i = 1, j = 0;
-              ps.setString(i++, String.valueOf((argument[j++])));
-              ps.setString(i++, String.valueOf((argument[j++])));
-            }
-            
-          });
-      log.info(String.format("Update counts: %s", Arrays.deepToString(updateCounts)));
-    } catch (DataAccessException e) {
-      if (e.contains(BatchUpdateException.class)) {
-        SQLException be = (SQLException)e.getCause();
-        do {
-          log.error("insertData(): SQLException", be);
-          be = be.getNextException();
-        } while (be != null);
-      } else {
-        log.error("insertData(): DataAccessException", e);
-      }
-      throw e;
-    } catch (Exception e) {
-      log.error("insertData(): Exception", e);
-      throw e;
-    }
-    
-    log.info("insertData() end");
-  }
-  
-  
-  @Transactional(propagation=Propagation.SUPPORTS)
-  public void findByFirstName(String firstName)
-  throws Exception {
-    log.info("findByFirstName() start");
-    
-    try {
-      final String strSqlSelect = "select * from common.customers where FIRST_NAME = ?";
-      
-      jdbcTemplate.query(
-          strSqlSelect, new Object[] { firstName },
-          (rs, rowNo) -> new Customer(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name"))
-        ).forEach(customer -> log.info(customer.toString()));
-    } catch (Exception e) {
-      log.error("findByFirstName(): Exception", e);
-      throw e;
-    }
-    
-    log.info("findByFirstName() end");
-  }
-  
-}
+package hello;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The partitioned execution strategy over {@link CustomerRepository}: the static methods split a load or lookup into
+ * chunks and run them in parallel on pool-01, each chunk a transaction of its own.
+ */
+@Service
+public class ConcurrentCustomerService {
+  
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentCustomerService.class);
+  
+  static final String METRICS_TAG = "concurrent";
+  
+  @Autowired
+  CustomerRepository customerRepository;
+  
+  @Autowired
+  DataLogger dataLogger;
+  
+  public int getBatchSize() {
+    return customerRepository.getBatchSize();
+  }
+  
+  public int getInListSize() {
+    return customerRepository.getInListSize();
+  }
+  
+//  @Autowired
+//  ThreadPoolTaskExecutor taskExecutor;
+  
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void createTable() 
+  throws Exception {
+    customerRepository.createTable(METRICS_TAG);
+  }
+  
+  public static BulkLoadResult insertDataConcurrently(
+      List<Object[]> splitNames, ConcurrentCustomerService conCustomerService, ThreadPoolTaskExecutor taskExecutor) 
+  throws Exception {
+    log.info("insertDataConcurrently() start");
+    
+    BulkLoader loader = BulkLoader.forExecutor(taskExecutor, conCustomerService.getBatchSize(), splitNames.size());
+    BulkLoadResult result = loader.load(splitNames, 
+        (chunkNo, chunk) -> taskExecutor.submitListenable(
+            new CallableInsertTask(chunkNo, chunk, conCustomerService)).completable());
+    
+    log.info("insertDataConcurrently() end");
+    
+    return result;
+  }
+
+  /**
+   * Inserts the chunks through {@link LoaderExecutor#invokeAll(List)}: the first chunk that fails cancels the chunks
+   * still running or waiting, which are reported as failed with a CancellationException (or the interruption they
+   * saw). Chunks that completed before the failure stay committed.
+   */
+  public static BulkLoadResult insertDataStructured(
+      List<Object[]> splitNames, ConcurrentCustomerService conCustomerService, LoaderExecutor loaderExecutor) 
+  throws Exception {
+    log.info("insertDataStructured() start");
+    
+    int chunkSize = BulkLoader.chunkSize(
+        splitNames.size(), loaderExecutor.getMaxConcurrency(), conCustomerService.getBatchSize());
+    int chunks = (splitNames.size() + chunkSize - 1) / chunkSize;
+    AtomicReferenceArray<ChunkResult> chunkResults = new AtomicReferenceArray<ChunkResult>(chunks);
+    
+    List<Callable<ChunkResult>> tasks = new ArrayList<Callable<ChunkResult>>(chunks);
+    for (int i = 0; i < chunks; i++) {
+      final int chunkNo = i;
+      final List<Object[]> chunk = 
+          splitNames.subList(chunkNo * chunkSize, Math.min((chunkNo + 1) * chunkSize, splitNames.size()));
+      tasks.add(() -> {
+        try {
+          conCustomerService.insertData(chunk);
+        } catch (Exception e) {
+          chunkResults.set(chunkNo, ChunkResult.failed(chunkNo, chunk.size(), e));
+          throw e;
+        }
+        chunkResults.set(chunkNo, ChunkResult.succeeded(chunkNo, chunk.size()));
+        return chunkResults.get(chunkNo);
+      });
+    }
+    
+    try {
+      loaderExecutor.invokeAll(tasks);
+    } catch (ExecutionException e) {
+      log.error("insertDataStructured(): ExecutionException", e.getCause());
+    }
+    
+    BulkLoadResult result = new BulkLoadResult();
+    for (int i = 0; i < chunks; i++) {
+      ChunkResult chunkResult = chunkResults.get(i);
+      result.add(chunkResult != null 
+          ? chunkResult 
+          : ChunkResult.failed(i, Math.min(chunkSize, splitNames.size() - i * chunkSize), new CancellationException()));
+    }
+    
+    log.info(String.format("insertDataStructured() end: %s", result));
+    
+    return result;
+  }
+  
+  /**
+   * Looks the first names up in parallel through the {@link LoaderExecutor}. The first lookup that fails cancels the
+   * others.
+   *
+   * @return customers by first name, in the order of {@code firstNames}
+   */
+  public static Map<String, List<Customer>> findByFirstNameConcurrently(
+      List<String> firstNames, ConcurrentCustomerService conCustomerService, LoaderExecutor loaderExecutor) 
+  throws Exception {
+    log.info("findByFirstNameConcurrently() start");
+    
+    List<Callable<List<Customer>>> tasks = new ArrayList<Callable<List<Customer>>>(firstNames.size());
+    for (String firstName : firstNames) {
+      tasks.add(() -> {
+        List<Customer> customers = new ArrayList<Customer>();
+        conCustomerService.findByFirstName(firstName, customers::add);
+        return customers;
+      });
+    }
+    
+    List<List<Customer>> results = loaderExecutor.invokeAll(tasks);
+    Map<String, List<Customer>> customers = new LinkedHashMap<String, List<Customer>>();
+    for (int i = 0; i < firstNames.size(); i++) {
+      customers.put(firstNames.get(i), results.get(i));
+    }
+    
+    log.info(String.format("findByFirstNameConcurrently() end: names=%s", customers.size()));
+    
+    return customers;
+  }
+  
+  /**
+   * Looks many first names up at once: the distinct names are split into "FIRST_NAME in (...)" lists of up to
+   * customer.query.in-list-size names, and the lists run in parallel through the {@link LoaderExecutor}. Fewer names
+   * make shorter lists, so that every thread gets one. The first list that fails cancels the others.
+   *
+   * @return customers by first name, in the order of {@code firstNames}; an empty list for a name without customers.
+   *         Null names are left out, FIRST_NAME = NULL matches no row.
+   */
+  public static Map<String, List<Customer>> findByFirstNames(
+      Collection<String> firstNames, ConcurrentCustomerService conCustomerService, LoaderExecutor loaderExecutor)
+  throws Exception {
+    log.info("findByFirstNames() start");
+    
+    Map<String, List<Customer>> customers = new LinkedHashMap<String, List<Customer>>();
+    List<List<Customer>> results = invokeByFirstNames(firstNames, customers, conCustomerService, loaderExecutor,
+        chunk -> {
+          List<Customer> rows = new ArrayList<Customer>();
+          conCustomerService.findByFirstNames(chunk, rows::add);
+          return rows;
+        });
+    for (List<Customer> rows : results) {
+      for (Customer customer : rows) {
+        customers.computeIfAbsent(customer.getFirstName(), name -> new ArrayList<Customer>()).add(customer);
+      }
+    }
+    
+    log.info(String.format("findByFirstNames() end: names=%s", customers.size()));
+    
+    return customers;
+  }
+  
+  /**
+   * Like {@link #findByFirstNames(Collection, ConcurrentCustomerService, LoaderExecutor)}, but hands each customer
+   * to the consumer as it is read, on the thread of its list: the consumer must be thread safe.
+   *
+   * @return number of customers read
+   */
+  public static long findByFirstNames(
+      Collection<String> firstNames, Consumer<Customer> consumer, ConcurrentCustomerService conCustomerService,
+      LoaderExecutor loaderExecutor)
+  throws Exception {
+    log.info("findByFirstNames() start");
+    
+    long rowCount = 0;
+    for (long rows : invokeByFirstNames(firstNames, new LinkedHashMap<String, List<Customer>>(), conCustomerService,
+        loaderExecutor, chunk -> conCustomerService.findByFirstNames(chunk, consumer))) {
+      rowCount += rows;
+    }
+    
+    log.info(String.format("findByFirstNames() end: rows=%s", rowCount));
+    
+    return rowCount;
+  }
+  
+  /**
+   * Puts an empty list for each distinct name into {@code customers}, splits the names into IN lists and runs the
+   * lookup on each.
+   */
+  private static <T> List<T> invokeByFirstNames(
+      Collection<String> firstNames, Map<String, List<Customer>> customers,
+      ConcurrentCustomerService conCustomerService, LoaderExecutor loaderExecutor, InListLookup<T> lookup)
+  throws Exception {
+    for (String firstName : new LinkedHashSet<String>(firstNames)) {
+      if (firstName != null) {
+        customers.put(firstName, new ArrayList<Customer>());
+      }
+    }
+    List<String> names = new ArrayList<String>(customers.keySet());
+    int perThread = (names.size() + loaderExecutor.getMaxConcurrency() - 1) / loaderExecutor.getMaxConcurrency();
+    int listSize = Math.max(Math.min(conCustomerService.getInListSize(), perThread), 1);
+    
+    List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+    for (int from = 0; from < names.size(); from += listSize) {
+      List<String> chunk = names.subList(from, Math.min(from + listSize, names.size()));
+      tasks.add(() -> lookup.apply(chunk));
+    }
+    return loaderExecutor.invokeAll(tasks);
+  }
+  
+  private interface InListLookup<T> {
+    T apply(List<String> firstNames)
+    throws Exception;
+  }
+
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void insertData(List<Object[]> splitNames) 
+  throws Exception {
+    dataLogger.rows(log, "Working data", splitNames);
+    
+    customerRepository.insert(CustomerBatch.of(splitNames), customerRepository.getDefaultMode(), METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public void findByFirstName(String firstName)
+  throws Exception {
+    findByFirstName(firstName, customer -> log.info(customer.toString()));
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public long findByFirstName(String firstName, Consumer<Customer> consumer)
+  throws Exception {
+    return customerRepository.findByFirstName(firstName, consumer, METRICS_TAG);
+  }
+  
+  
+  /**
+   * Streams the customers with any of the first names, with one statement; see
+   * {@link #findByFirstNames(Collection, ConcurrentCustomerService, LoaderExecutor)} for any number of names.
+   *
+   * @param firstNames distinct and not null, at most a few hundred
+   */
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public long findByFirstNames(List<String> firstNames, Consumer<Customer> consumer)
+  throws Exception {
+    return customerRepository.findByFirstNames(firstNames, consumer, METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public List<Customer> findByFirstNameCached(String firstName)
+  throws Exception {
+    return customerRepository.findByFirstNameCached(firstName, METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public List<Customer> findByFirstName(String firstName, long afterId, int limit)
+  throws Exception {
+    return customerRepository.findByFirstName(firstName, afterId, limit, METRICS_TAG);
+  }
+  
+}
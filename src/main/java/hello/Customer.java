@@ -1,45 +1,62 @@
-package hello;
-
-public class Customer {
-  private long id;
-  private String firstName;
-  private String lastName;
-  
-  public Customer(long id, String firstName, String lastName) {
-    super();
-    this.id = id;
-    this.firstName = firstName;
-    this.lastName = lastName;
-  }
-
-  public long getId() {
-    return id;
-  }
-
-  public void setId(long id) {
-    this.id = id;
-  }
-
-  public String getFirstName() {
-    return firstName;
-  }
-
-  public void setFirstName(String firstName) {
-    this.firstName = firstName;
-  }
-
-  public String getLastName() {
-    return lastName;
-  }
-
-  public void setLastName(String lastName) {
-    this.lastName = lastName;
-  }
-
-  @Override
-  public String toString() {
-    return String.format("Customer [id=%s, firstName=%s, lastName=%s]", id, firstName, lastName);
-  }
-  
-  
-}
+package hello;
+
+/**
+ * Immutable customer row. Names read from the database come from a {@link NamePool}, so large results share the
+ * String of a repeated name.
+ */
+public final class Customer {
+  private final long id;
+  private final String firstName;
+  private final String lastName;
+  
+  public Customer(long id, String firstName, String lastName) {
+    super();
+    this.id = id;
+    this.firstName = firstName;
+    this.lastName = lastName;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getFirstName() {
+    return firstName;
+  }
+
+  public String getLastName() {
+    return lastName;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Customer)) {
+      return false;
+    }
+    Customer other = (Customer) obj;
+    return id == other.id && equals(firstName, other.firstName) && equals(lastName, other.lastName);
+  }
+
+  private static boolean equals(String a, String b) {
+    return a == b || (a != null && a.equals(b));
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(id);
+  }
+
+  @Override
+  public String toString() {
+    // called per row when results are logged, so no String.format
+    return new StringBuilder(64)
+        .append("Customer [id=").append(id)
+        .append(", firstName=").append(firstName)
+        .append(", lastName=").append(lastName)
+        .append(']').toString();
+  }
+  
+}
@@ -0,0 +1,97 @@
+package hello;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column oriented buffer of customer rows. The arrays are allocated once and reused across batches through
+ * {@link #clear()}, so filling and binding a batch does not allocate per row.
+ */
+public class CustomerBatch {
+  private final String[] firstNames;
+  private final String[] lastNames;
+  // IDs assigned by the client (IdAllocator) or read back from the driver; allocated on first use
+  private long[] ids;
+  private boolean hasIds;
+  private int size;
+  
+  public CustomerBatch(int capacity) {
+    super();
+    this.firstNames = new String[capacity];
+    this.lastNames = new String[capacity];
+  }
+  
+  public static CustomerBatch of(List<Object[]> splitNames) {
+    CustomerBatch batch = new CustomerBatch(splitNames.size());
+    for (Object[] name : splitNames) {
+      batch.add(asString(name[0]), asString(name[1]));
+    }
+    return batch;
+  }
+  
+  private static String asString(Object value) {
+    return value instanceof String ? (String) value : String.valueOf(value);
+  }
+  
+  public void add(String firstName, String lastName) {
+    if (size == firstNames.length) {
+      throw new IllegalStateException("CustomerBatch is full: capacity=" + firstNames.length);
+    }
+    firstNames[size] = firstName;
+    lastNames[size] = lastName;
+    size++;
+  }
+  
+  public void clear() {
+    // drop the references so the names of the previous batch can be collected
+    Arrays.fill(firstNames, 0, size, null);
+    Arrays.fill(lastNames, 0, size, null);
+    size = 0;
+    hasIds = false;
+  }
+  
+  public void setId(int index, long id) {
+    if (ids == null) {
+      ids = new long[firstNames.length];
+    }
+    ids[index] = id;
+    hasIds = true;
+  }
+  
+  public long getId(int index) {
+    return ids[index];
+  }
+  
+  public boolean hasIds() {
+    return hasIds;
+  }
+  
+  public long[] getIds() {
+    return hasIds ? Arrays.copyOf(ids, size) : new long[0];
+  }
+
+  public String getFirstName(int index) {
+    return firstNames[index];
+  }
+
+  public String getLastName(int index) {
+    return lastNames[index];
+  }
+
+  public int size() {
+    return size;
+  }
+  
+  public int capacity() {
+    return firstNames.length;
+  }
+  
+  public boolean isEmpty() {
+    return size == 0;
+  }
+  
+  public boolean isFull() {
+    return size == firstNames.length;
+  }
+  
+}
@@ -0,0 +1,238 @@
+package hello;
+
+import java.sql.BatchUpdateException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+
+/**
+ * Binds a window of a {@link CustomerBatch} to {@link #INSERT_SQL}, or to {@link #INSERT_WITH_ID_SQL} if the batch
+ * has client assigned IDs. One setter is reused for all JDBC batches of a {@link CustomerBatch}.
+ */
+class CustomerBatchSetter implements BatchPreparedStatementSetter {
+  
+  static final String INSERT_SQL = "insert into common.customers(FIRST_NAME, LAST_NAME) values (?, ?)";
+  
+  static final String INSERT_WITH_ID_SQL = "insert into common.customers(ID, FIRST_NAME, LAST_NAME) values (?, ?, ?)";
+  
+  private final CustomerBatch batch;
+  
+  // fixed when the setter is created: IDs read back into the batch must not change the statement shape
+  private final boolean withIds;
+  
+  private int offset;
+  
+  private int count;
+
+  CustomerBatchSetter(CustomerBatch batch) {
+    super();
+    this.batch = batch;
+    this.withIds = batch.hasIds();
+  }
+  
+  static String insertSql(CustomerBatch batch) {
+    return batch.hasIds() ? INSERT_WITH_ID_SQL : INSERT_SQL;
+  }
+  
+  static int[][] batchUpdate(JdbcTemplate jdbcTemplate, String sql, CustomerBatch batch, int batchSize) {
+    if (batch.size() == 0) {
+      return new int[0][];
+    }
+    CustomerBatchSetter setter = new CustomerBatchSetter(batch);
+    setter.window(0, batch.size());
+    return jdbcTemplate.execute(sql, (PreparedStatementCallback<int[][]>) ps -> executeBatches(ps, setter, batchSize));
+  }
+
+  /**
+   * Binds all rows of {@code rows} to the one prepared statement and executes them in JDBC batches of batchSize rows,
+   * so a call prepares the statement and borrows the connection once, however small the JDBC batches are.
+   *
+   * @return update counts, one array per JDBC batch
+   */
+  static int[][] executeBatches(PreparedStatement ps, BatchPreparedStatementSetter rows, int batchSize)
+  throws SQLException {
+    int size = rows.getBatchSize();
+    int[][] updateCounts = new int[(size + batchSize - 1) / batchSize][];
+    
+    for (int i = 0, from = 0; from < size; i++, from += batchSize) {
+      for (int row = from; row < Math.min(from + batchSize, size); row++) {
+        rows.setValues(ps, row);
+        ps.addBatch();
+      }
+      updateCounts[i] = ps.executeBatch();
+    }
+    
+    return updateCounts;
+  }
+
+  /**
+   * Inserts the batch with {@link #INSERT_SQL} and reads the IDs generated by the database into it, from the
+   * generated keys of each JDBC batch. Drivers that do not return the keys of every row of a batch are reported with
+   * an exception; use client assigned IDs (customer.id.strategy=HILO) with them. A batch with client assigned IDs is
+   * inserted with them.
+   */
+  static void batchUpdateReturningKeys(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    if (batch.hasIds()) {
+      batchUpdate(jdbcTemplate, INSERT_WITH_ID_SQL, batch, batchSize);
+      return;
+    }
+    if (batch.size() == 0) {
+      return;
+    }
+    CustomerBatchSetter setter = new CustomerBatchSetter(batch);
+    
+    jdbcTemplate.execute(
+        con -> con.prepareStatement(INSERT_SQL, new String[] { "ID" }),
+        (PreparedStatementCallback<Object>) ps -> {
+          for (int from = 0; from < batch.size(); from += batchSize) {
+            int count = Math.min(batchSize, batch.size() - from);
+            setter.window(from, count);
+            for (int i = 0; i < count; i++) {
+              setter.setValues(ps, i);
+              ps.addBatch();
+            }
+            ps.executeBatch();
+            
+            int keys = 0;
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+              while (keys < count && rs.next()) {
+                batch.setId(from + keys++, rs.getLong(1));
+              }
+            }
+            if (keys != count) {
+              throw new InvalidDataAccessApiUsageException(String.format(
+                  "Driver returned %s generated keys for a batch of %s rows", keys, count));
+            }
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Like {@link #batchUpdate(JdbcTemplate, String, CustomerBatch, int)}, but a rejected row does not fail the call.
+   * The update counts of the BatchUpdateException tell which rows failed: drivers that go on after an error (DB2, H2)
+   * mark them EXECUTE_FAILED, drivers that stop return the counts of the rows before the failed one, and the rows
+   * after it are sent again in the next JDBC batch. The rows written stay in the current transaction.
+   * <p>
+   * The JDBC batches are executed on one prepared statement in a callback rather than through
+   * {@link JdbcTemplate#batchUpdate(String, BatchPreparedStatementSetter)}, whose exception translation drops the
+   * update counts. Errors that are not per row (connection lost, or SQLSTATE class 40 where DB2 has already rolled
+   * back the unit of work) are rethrown.
+   */
+  static BatchInsertOutcome batchUpdatePartial(JdbcTemplate jdbcTemplate, String sql, CustomerBatch batch,
+      int batchSize) {
+    CustomerBatchSetter setter = new CustomerBatchSetter(batch);
+    setter.window(0, batch.size());
+    return batchUpdatePartial(jdbcTemplate, sql, batch, setter, batchSize);
+  }
+
+  /**
+   * Like {@link #batchUpdatePartial(JdbcTemplate, String, CustomerBatch, int)} for a statement of another shape:
+   * {@code rows} binds the row of the batch with the given index. A row with an update count of 0 was matched (an
+   * upsert of a name in the table) rather than inserted.
+   */
+  static BatchInsertOutcome batchUpdatePartial(JdbcTemplate jdbcTemplate, String sql, CustomerBatch batch,
+      BatchPreparedStatementSetter rows, int batchSize) {
+    BatchInsertOutcome outcome = new BatchInsertOutcome(batch.size());
+    if (batch.size() == 0) {
+      return outcome;
+    }
+
+    return jdbcTemplate.execute(sql, (PreparedStatementCallback<BatchInsertOutcome>) ps -> {
+      int from = 0;
+      while (from < batch.size()) {
+        int count = Math.min(batchSize, batch.size() - from);
+        for (int i = 0; i < count; i++) {
+          rows.setValues(ps, from + i);
+          ps.addBatch();
+        }
+
+        int[] counts;
+        SQLException cause;
+        try {
+          counts = ps.executeBatch();
+          for (int i = 0; i < count; i++) {
+            written(outcome, counts[i]);
+          }
+          from += count;
+          continue;
+        } catch (BatchUpdateException be) {
+          if (isRollback(be)) {
+            throw be;
+          }
+          // the statement runs the next JDBC batch: drop whatever the driver kept of the failed one
+          ps.clearBatch();
+          counts = be.getUpdateCounts();
+          cause = be.getNextException() != null ? be.getNextException() : be;
+        }
+
+        if (counts != null && counts.length >= count) {
+          for (int i = 0; i < count; i++) {
+            if (counts[i] == Statement.EXECUTE_FAILED) {
+              outcome.failed(batch.getFirstName(from + i), batch.getLastName(from + i), cause);
+            } else {
+              written(outcome, counts[i]);
+            }
+          }
+          from += count;
+        } else {
+          int executed = counts == null ? 0 : counts.length;
+          for (int i = 0; i < executed; i++) {
+            written(outcome, counts[i]);
+          }
+          outcome.failed(batch.getFirstName(from + executed), batch.getLastName(from + executed), cause);
+          from += executed + 1;
+        }
+      }
+      return outcome;
+    });
+  }
+
+  /**
+   * As in DataLogger, a row without a count (SUCCESS_NO_INFO) is taken as inserted.
+   */
+  private static void written(BatchInsertOutcome outcome, int updateCount) {
+    if (updateCount == 0) {
+      outcome.matched(1);
+    } else {
+      outcome.inserted(1);
+    }
+  }
+
+  private static boolean isRollback(SQLException e) {
+    for (; e != null; e = e.getNextException()) {
+      if (e.getSQLState() != null && e.getSQLState().startsWith("40")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void window(int offset, int count) {
+    this.offset = offset;
+    this.count = count;
+  }
+  
+  @Override
+  public void setValues(PreparedStatement ps, int i) throws SQLException {
+    if (withIds) {
+      ps.setLong(1, batch.getId(offset + i));
+      ps.setString(2, batch.getFirstName(offset + i));
+      ps.setString(3, batch.getLastName(offset + i));
+    } else {
+      ps.setString(1, batch.getFirstName(offset + i));
+      ps.setString(2, batch.getLastName(offset + i));
+    }
+  }
+
+  @Override
+  public int getBatchSize() {
+    return count;
+  }
+  
+}
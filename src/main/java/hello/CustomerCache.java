@@ -0,0 +1,182 @@
+package hello;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read-through cache of customers by first name, bounded by entry count (LRU) and age (TTL).
+ * <p>
+ * Inserts invalidate the names they touch once their transaction commits. A lookup that started loading before such
+ * an invalidation does not store its (possibly stale) result, which is detected through per-name generations.
+ */
+@Component
+public class CustomerCache {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerCache.class);
+
+  private static final int GENERATION_STRIPES = 64;
+
+  public interface Loader {
+    List<Customer> load(String firstName) throws Exception;
+  }
+
+  private static class CacheEntry {
+    final List<Customer> customers;
+    final long loadedAt;
+
+    CacheEntry(List<Customer> customers, long loadedAt) {
+      this.customers = customers;
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  private final int maxSize;
+
+  private final long ttlNanos;
+
+  private final int maxEntryRows;
+
+  private final Map<String, CacheEntry> entries;
+
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  public CustomerCache(
+      @Value("${customer.cache.max-size:1000}") int maxSize,
+      @Value("${customer.cache.ttl-seconds:300}") long ttlSeconds,
+      @Value("${customer.cache.max-entry-rows:10000}") int maxEntryRows) {
+    super();
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.maxEntryRows = maxEntryRows;
+    this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+        if (size() > CustomerCache.this.maxSize) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public List<Customer> get(String firstName, Loader loader)
+  throws Exception {
+    long now = System.nanoTime();
+    synchronized (entries) {
+      CacheEntry entry = entries.get(firstName);
+      if (entry != null) {
+        if (now - entry.loadedAt < ttlNanos) {
+          hits.increment();
+          return entry.customers;
+        }
+        entries.remove(firstName);
+        evictions.increment();
+      }
+    }
+    misses.increment();
+
+    // load outside the lock, so that slow queries do not block hits on other names
+    long generation = generations.get(stripe(firstName));
+    List<Customer> customers = Collections.unmodifiableList(loader.load(firstName));
+
+    if (maxSize > 0 && customers.size() <= maxEntryRows) {
+      synchronized (entries) {
+        if (generations.get(stripe(firstName)) == generation) {
+          entries.put(firstName, new CacheEntry(customers, now));
+        }
+      }
+    }
+    return customers;
+  }
+
+  public void invalidate(String firstName) {
+    synchronized (entries) {
+      generations.incrementAndGet(stripe(firstName));
+      entries.remove(firstName);
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (entries) {
+      for (int i = 0; i < GENERATION_STRIPES; i++) {
+        generations.incrementAndGet(i);
+      }
+      entries.clear();
+    }
+  }
+
+  /**
+   * Invalidates the first names of the batch when the current transaction commits, or immediately if there is no
+   * transaction.
+   */
+  public void invalidateAfterCommit(CustomerBatch batch) {
+    final Set<String> firstNames = new HashSet<String>();
+    for (int i = 0; i < batch.size(); i++) {
+      firstNames.add(batch.getFirstName(i));
+    }
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      firstNames.forEach(this::invalidate);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        firstNames.forEach(CustomerCache.this::invalidate);
+        log.debug(String.format("invalidateAfterCommit(): %s first names", firstNames.size()));
+      }
+    });
+  }
+
+  private static int stripe(String firstName) {
+    return (Objects.hashCode(firstName) & 0x7fffffff) % GENERATION_STRIPES;
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CustomerCache [size=%s, hits=%s, misses=%s, evictions=%s]",
+        size(), getHits(), getMisses(), getEvictions());
+  }
+
+}
@@ -0,0 +1,251 @@
+package hello;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads "first last" or "first,last" records from a UTF-8 file through a fixed size buffer, so memory use does not
+ * depend on the file size. Lines are split on the first separator byte only, without regex or intermediate Strings.
+ * <p>
+ * A reader can be limited to a byte range of the file: it reads the lines that start within the range, so adjacent
+ * ranges split at any byte read every line exactly once (see {@link BulkLoadJob}).
+ */
+public class CustomerFileReader implements Iterator<Object[]>, Closeable {
+
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+
+  private final byte separator;
+
+  private ByteBuffer buffer;
+
+  // file offset of buffer[0]
+  private long bufferOffset;
+
+  // lines starting at or after this offset are not read
+  private final long endOffset;
+
+  // file offset after the pending record, and after the last record returned
+  private long pendingEnd;
+
+  private long offset;
+
+  private boolean eof;
+
+  private String firstName;
+
+  private String lastName;
+
+  private boolean pending;
+
+  private long lineNo;
+
+  public CustomerFileReader(Path file, char separator)
+  throws IOException {
+    this(file, separator, DEFAULT_BUFFER_SIZE);
+  }
+
+  public CustomerFileReader(Path file, char separator, int bufferSize)
+  throws IOException {
+    this(file, separator, bufferSize, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * Reads the lines that start at or after {@code startOffset} and before {@code endOffset}. A range may start in the
+   * middle of a line, that line belongs to the previous range.
+   */
+  public CustomerFileReader(Path file, char separator, long startOffset, long endOffset)
+  throws IOException {
+    this(file, separator, DEFAULT_BUFFER_SIZE, startOffset, endOffset);
+  }
+
+  private CustomerFileReader(Path file, char separator, int bufferSize, long startOffset, long endOffset)
+  throws IOException {
+    super();
+    if (separator > 0x7f) {
+      throw new IllegalArgumentException("separator must be an ASCII character: " + separator);
+    }
+    if (startOffset < 0 || endOffset < startOffset) {
+      throw new IllegalArgumentException(String.format("Invalid range [%s, %s)", startOffset, endOffset));
+    }
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    this.separator = (byte) separator;
+    this.buffer = ByteBuffer.allocate(bufferSize);
+    this.buffer.flip();
+    this.endOffset = endOffset;
+    this.offset = startOffset;
+
+    if (startOffset > 0) {
+      // skip the rest of the line before the range; nothing if the byte before it is a newline
+      channel.position(startOffset - 1);
+      bufferOffset = startOffset - 1;
+      skipLine();
+    }
+  }
+
+  /**
+   * Line number within the range read.
+   */
+  public long getLineNo() {
+    return lineNo;
+  }
+
+  /**
+   * File offset after the last record returned: the start of a line, from which reading can resume with
+   * {@link #CustomerFileReader(Path, char, long, long)}.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (!pending) {
+      try {
+        pending = readRecord();
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to read line " + (lineNo + 1), e);
+      }
+    }
+    return pending;
+  }
+
+  @Override
+  public Object[] next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    pending = false;
+    offset = pendingEnd;
+    return new Object[] { firstName, lastName };
+  }
+
+  /**
+   * Appends records to the batch until it is full or the file is exhausted, without creating a row object.
+   *
+   * @return number of records added
+   */
+  public int read(CustomerBatch batch) {
+    int added = 0;
+    while (!batch.isFull() && hasNext()) {
+      pending = false;
+      offset = pendingEnd;
+      batch.add(firstName, lastName);
+      added++;
+    }
+    return added;
+  }
+
+  private boolean readRecord()
+  throws IOException {
+    while (true) {
+      int start = buffer.position();
+      if (bufferOffset + start >= endOffset) {
+        return false;
+      }
+      int end = indexOf(buffer, (byte) '\n', start, buffer.limit());
+
+      if (end < 0) {
+        if (!eof) {
+          fill();
+          continue;
+        }
+        if (start == buffer.limit()) {
+          return false;
+        }
+        // last line without a trailing newline
+        end = buffer.limit();
+        buffer.position(end);
+      } else {
+        buffer.position(end + 1);
+      }
+      lineNo++;
+
+      int lineEnd = end;
+      if (lineEnd > start && buffer.get(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      if (lineEnd == start) {
+        continue;
+      }
+
+      parse(start, lineEnd);
+      pendingEnd = bufferOffset + buffer.position();
+      return true;
+    }
+  }
+
+  private void skipLine()
+  throws IOException {
+    while (true) {
+      int end = indexOf(buffer, (byte) '\n', buffer.position(), buffer.limit());
+      if (end >= 0) {
+        buffer.position(end + 1);
+        return;
+      }
+      if (eof) {
+        buffer.position(buffer.limit());
+        return;
+      }
+      fill();
+    }
+  }
+
+  private void parse(int start, int end) {
+    byte[] bytes = buffer.array();
+    int sep = indexOf(buffer, separator, start, end);
+    if (sep < 0) {
+      throw new IllegalStateException(String.format("Line %s has no separator '%s'", lineNo, (char) separator));
+    }
+    // ignore any further columns
+    int lastEnd = indexOf(buffer, separator, sep + 1, end);
+    if (lastEnd < 0) {
+      lastEnd = end;
+    }
+
+    firstName = new String(bytes, start, sep - start, StandardCharsets.UTF_8);
+    lastName = new String(bytes, sep + 1, lastEnd - sep - 1, StandardCharsets.UTF_8);
+  }
+
+  private void fill()
+  throws IOException {
+    bufferOffset += buffer.position();
+    buffer.compact();
+    if (!buffer.hasRemaining()) {
+      // a single line is longer than the buffer
+      ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+      buffer.flip();
+      larger.put(buffer);
+      buffer = larger;
+    }
+    if (channel.read(buffer) < 0) {
+      eof = true;
+    }
+    buffer.flip();
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+    byte[] bytes = buffer.array();
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void close()
+  throws IOException {
+    channel.close();
+  }
+
+}
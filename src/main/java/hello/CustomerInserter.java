@@ -0,0 +1,127 @@
+package hello;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * The insert strategies of the services, selectable per call:
+ * <ul>
+ * <li>BATCH - one "insert ... values (?, ?)" per row, sent in JDBC batches of batchSize rows</li>
+ * <li>MULTI_ROW - "insert ... values (?, ?), (?, ?), ..." of batchSize rows, see {@link MultiRowInsert}</li>
+ * <li>STAGING - through the stage table and "insert ... select from", see {@link StagingInsert}</li>
+ * <li>UPSERT - only the customers whose names are not in the table yet, see {@link CustomerUpsert}</li>
+ * </ul>
+ * The default is customer.insert.mode. With customer.insert.auto-tune=true the batch size of each mode is tuned at
+ * run time by a {@link BatchSizeTuner}, starting from the configured batch size.
+ * <p>
+ * The inserts that return the generated keys or the rejected rows upsert in the UPSERT mode and use BATCH in the
+ * others: a multi-row statement or the stage table does not report keys or failures per row.
+ */
+@Component
+public class CustomerInserter {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerInserter.class);
+
+  public enum Mode {
+    BATCH, MULTI_ROW, STAGING, UPSERT
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final CustomerUpsert customerUpsert;
+
+  private final Mode defaultMode;
+
+  private final boolean autoTune;
+
+  private final int maxBatchSize;
+
+  private final Map<Mode, InsertStrategy> strategies = new EnumMap<Mode, InsertStrategy>(Mode.class);
+
+  private final Map<Mode, BatchSizeTuner> tuners = new ConcurrentHashMap<Mode, BatchSizeTuner>();
+
+  public CustomerInserter(
+      JdbcTemplate jdbcTemplate,
+      CustomerUpsert customerUpsert,
+      @Value("${customer.insert.mode:BATCH}") Mode defaultMode,
+      @Value("${customer.insert.auto-tune:false}") boolean autoTune,
+      @Value("${customer.insert.max-batch-size:5000}") int maxBatchSize) {
+    super();
+    this.jdbcTemplate = jdbcTemplate;
+    this.customerUpsert = customerUpsert;
+    this.defaultMode = defaultMode;
+    this.autoTune = autoTune;
+    this.maxBatchSize = maxBatchSize;
+
+    strategies.put(Mode.BATCH,
+        (template, batch, batchSize) -> CustomerBatchSetter.batchUpdate(
+            template, CustomerBatchSetter.insertSql(batch), batch, batchSize));
+    strategies.put(Mode.MULTI_ROW, new MultiRowInsert());
+    strategies.put(Mode.STAGING, new StagingInsert());
+    strategies.put(Mode.UPSERT, customerUpsert);
+  }
+
+  public Mode getDefaultMode() {
+    return defaultMode;
+  }
+
+  public int[][] insert(CustomerBatch batch, int batchSize) {
+    return insert(batch, defaultMode, batchSize);
+  }
+
+  /**
+   * @param batchSize rows per round-trip, unless auto-tuning is on
+   * @return update counts, one array per round-trip
+   */
+  public int[][] insert(CustomerBatch batch, Mode mode, int batchSize) {
+    if (!autoTune) {
+      return strategies.get(mode).insert(jdbcTemplate, batch, batchSize);
+    }
+
+    BatchSizeTuner tuner = tuners.computeIfAbsent(mode, m -> new BatchSizeTuner(batchSize, 1, maxBatchSize));
+    boolean settled = tuner.isSettled();
+    long start = System.nanoTime();
+    int[][] updateCounts = strategies.get(mode).insert(jdbcTemplate, batch, tuner.getBatchSize());
+    tuner.record(batch.size(), System.nanoTime() - start);
+    if (!settled && tuner.isSettled()) {
+      log.info(String.format("insert(): %s %s", mode, tuner));
+    }
+    return updateCounts;
+  }
+
+  /**
+   * Inserts the batch and returns the IDs of its rows, in row order, see
+   * {@link CustomerBatchSetter#batchUpdateReturningKeys(JdbcTemplate, CustomerBatch, int)}. In the UPSERT mode a name
+   * in the table gets the ID of its customer, see {@link CustomerUpsert#upsertReturningKeys}.
+   */
+  public long[] insertReturningKeys(CustomerBatch batch, int batchSize) {
+    if (defaultMode == Mode.UPSERT) {
+      return customerUpsert.upsertReturningKeys(jdbcTemplate, batch, batchSize);
+    }
+    CustomerBatchSetter.batchUpdateReturningKeys(jdbcTemplate, batch, batchSize);
+    return batch.getIds();
+  }
+
+  /**
+   * Inserts the rows the database accepts, see
+   * {@link CustomerBatchSetter#batchUpdatePartial(JdbcTemplate, String, CustomerBatch, int)}.
+   */
+  public BatchInsertOutcome insertPartial(CustomerBatch batch, int batchSize) {
+    if (defaultMode == Mode.UPSERT) {
+      return customerUpsert.upsertPartial(jdbcTemplate, batch, batchSize);
+    }
+    return CustomerBatchSetter.batchUpdatePartial(jdbcTemplate, CustomerBatchSetter.insertSql(batch), batch, batchSize);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CustomerInserter [defaultMode=%s, autoTune=%s, tuners=%s]", defaultMode, autoTune, tuners);
+  }
+
+}
@@ -0,0 +1,111 @@
+package hello;
+
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Customer lookups shared by the services. Only the needed columns are selected and read by index.
+ */
+final class CustomerQueries {
+
+  static final String SELECT_BY_FIRST_NAME =
+      "select ID, FIRST_NAME, LAST_NAME from common.customers where FIRST_NAME = ?";
+
+  static final String SELECT_PAGE_BY_FIRST_NAME =
+      "select ID, FIRST_NAME, LAST_NAME from common.customers where FIRST_NAME = ? and ID > ? "
+      + "order by ID fetch first %d rows only";
+
+  static final String SELECT_BY_FIRST_NAMES =
+      "select ID, FIRST_NAME, LAST_NAME from common.customers where FIRST_NAME in (%s)";
+
+  // IN lists by number of markers, a power of two
+  private static final ConcurrentMap<Integer, String> IN_LIST_SHAPES = new ConcurrentHashMap<Integer, String>();
+
+  static RowMapper<Customer> rowMapper(NamePool namePool) {
+    return (rs, rowNo) -> new Customer(
+        rs.getLong(1), namePool.intern(rs.getString(2)), namePool.intern(rs.getString(3)));
+  }
+
+  private CustomerQueries() {
+  }
+
+  /**
+   * Hands each row to the consumer as it is read, so no more than {@code fetchSize} rows are held by the driver.
+   *
+   * @return number of rows read
+   */
+  static long streamByFirstName(
+      JdbcTemplate jdbcTemplate, String firstName, int fetchSize, NamePool namePool, Consumer<Customer> consumer) {
+    RowMapper<Customer> rowMapper = rowMapper(namePool);
+    long[] rowCount = new long[1];
+
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(SELECT_BY_FIRST_NAME);
+          ps.setFetchSize(fetchSize);
+          ps.setString(1, firstName);
+          return ps;
+        },
+        rs -> {
+          consumer.accept(rowMapper.mapRow(rs, (int) rowCount[0]));
+          rowCount[0]++;
+        });
+
+    return rowCount[0];
+  }
+
+  /**
+   * Streams the customers with any of the first names, with one "FIRST_NAME in (?, ...)" statement. The list is
+   * padded to a power of two markers with its last name, so there are at most log2(n) + 1 statement shapes and the
+   * database's statement cache keeps their access plans.
+   *
+   * @param firstNames distinct, not null and not empty
+   * @return number of rows read
+   */
+  static long streamByFirstNames(
+      JdbcTemplate jdbcTemplate, List<String> firstNames, int fetchSize, NamePool namePool,
+      Consumer<Customer> consumer) {
+    RowMapper<Customer> rowMapper = rowMapper(namePool);
+    int markers = Integer.highestOneBit(firstNames.size() * 2 - 1);
+    String sql = IN_LIST_SHAPES.computeIfAbsent(markers, n -> String.format(SELECT_BY_FIRST_NAMES,
+        String.join(", ", Collections.nCopies(n, "?"))));
+    long[] rowCount = new long[1];
+
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(sql);
+          ps.setFetchSize(fetchSize);
+          for (int i = 0; i < markers; i++) {
+            ps.setString(i + 1, firstNames.get(Math.min(i, firstNames.size() - 1)));
+          }
+          return ps;
+        },
+        rs -> {
+          consumer.accept(rowMapper.mapRow(rs, (int) rowCount[0]));
+          rowCount[0]++;
+        });
+
+    return rowCount[0];
+  }
+
+  /**
+   * Keyset pagination: returns up to {@code limit} customers with an ID greater than {@code afterId}, in ID order.
+   * Pass the ID of the last customer of a page to read the next one.
+   */
+  static List<Customer> pageByFirstName(
+      JdbcTemplate jdbcTemplate, String firstName, long afterId, int limit, NamePool namePool) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive: " + limit);
+    }
+
+    return jdbcTemplate.query(
+        String.format(SELECT_PAGE_BY_FIRST_NAME, limit), new Object[] { firstName, afterId }, rowMapper(namePool));
+  }
+
+}
@@ -0,0 +1,278 @@
+package hello;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The data access shared by {@link CustomerService} (synchronous), {@link ConcurrentCustomerService} (chunks
+ * partitioned over pool-01) and {@link AsyncCustomerService} (@Async, composed with CompletableFuture): schema
+ * migration, batch inserts (through the {@link CustomerInserter} strategies, returning the generated keys, or of the
+ * rows the database accepts), and lookups through {@link CustomerQueries}, each with its logging, cache invalidation
+ * and metrics.
+ * <p>
+ * The services only add their transactions and the way they run the work; they pass their metrics tag, so
+ * {@link LoaderMetrics} still reports them apart. Methods run in the caller's transaction.
+ */
+@Repository
+public class CustomerRepository {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerRepository.class);
+
+  /**
+   * Writes a batch whose IDs are assigned, the step in which the inserts differ.
+   */
+  @FunctionalInterface
+  private interface InsertCall<T> {
+    T insert(CustomerBatch batch) throws Exception;
+  }
+
+  @Value("${customer.insert.batch-size:3}")
+  int batchSize;
+
+  @Value("${customer.query.fetch-size:500}")
+  int fetchSize;
+
+  @Value("${customer.query.in-list-size:64}")
+  int inListSize;
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  CustomerCache customerCache;
+
+  @Autowired
+  NamePool namePool;
+
+  @Autowired
+  IdAllocator idAllocator;
+
+  @Autowired
+  CustomerInserter customerInserter;
+
+  @Autowired
+  SchemaManager schemaManager;
+
+  @Autowired
+  LoaderMetrics loaderMetrics;
+
+  @Autowired
+  DataLogger dataLogger;
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public int getInListSize() {
+    return inListSize;
+  }
+
+  public CustomerInserter.Mode getDefaultMode() {
+    return customerInserter.getDefaultMode();
+  }
+
+  public void createTable(String tag)
+  throws Exception {
+    log.info(String.format("createTable() start: %s", tag));
+
+    long start = System.nanoTime();
+    try {
+      schemaManager.migrate();
+
+    } catch (DataAccessException e) {
+      log.error("createTable(): DataAccessException", e);
+      throw e;
+    }
+
+    loaderMetrics.recordCreateTable(tag, System.nanoTime() - start);
+
+    log.info(String.format("createTable() end: %s", tag));
+  }
+
+  /**
+   * Inserts the batch with the given strategy.
+   */
+  public void insert(CustomerBatch batch, CustomerInserter.Mode mode, String tag)
+  throws Exception {
+    log.info(String.format("insertData() start: %s", tag));
+
+    insert("insertData", batch, tag, assigned -> {
+      int[][] updateCounts = customerInserter.insert(assigned, mode, batchSize);
+      dataLogger.updateCounts(log, updateCounts);
+      return assigned.size();
+    }, rows -> rows);
+
+    log.info(String.format("insertData() end: %s", tag));
+  }
+
+  /**
+   * Inserts the batch and returns the IDs of its rows, in row order. With client assigned IDs they are known before
+   * the insert; otherwise they are read from the generated keys of each JDBC batch, without a query per row. The
+   * UPSERT mode applies, see {@link CustomerInserter#insertReturningKeys(CustomerBatch, int)}.
+   */
+  public long[] insertReturningKeys(CustomerBatch batch, String tag)
+  throws Exception {
+    log.info(String.format("insertDataReturningKeys() start: %s", tag));
+
+    long[] ids = insert("insertDataReturningKeys", batch, tag,
+        assigned -> customerInserter.insertReturningKeys(assigned, batchSize), inserted -> inserted.length);
+
+    log.info(String.format("insertDataReturningKeys() end: %s", tag));
+
+    return ids;
+  }
+
+  /**
+   * Inserts the rows the database accepts, in JDBC batches of partialBatchSize rows; the rejected rows are returned
+   * instead of failing the call. The UPSERT mode applies.
+   */
+  public BatchInsertOutcome insertPartial(CustomerBatch batch, int partialBatchSize, String tag)
+  throws Exception {
+    log.info(String.format("insertDataPartial() start: %s", tag));
+
+    BatchInsertOutcome outcome = insert("insertDataPartial", batch, tag,
+        assigned -> customerInserter.insertPartial(assigned, partialBatchSize),
+        written -> written.getRowsInserted() + written.getRowsMatched());
+
+    log.info(String.format("insertDataPartial() end: %s, %s", tag, outcome));
+
+    return outcome;
+  }
+
+  /**
+   * The steps every insert shares: assigns client IDs if configured, writes the batch, invalidates the cached first
+   * names of the batch once the transaction commits, and records the metrics and logs the errors.
+   */
+  private <T> T insert(String method, CustomerBatch batch, String tag, InsertCall<T> call,
+      ToIntFunction<T> rowsInserted)
+  throws Exception {
+    long start = System.nanoTime();
+    try {
+      idAllocator.assign(batch);
+      T result = call.insert(batch);
+      customerCache.invalidateAfterCommit(batch);
+      loaderMetrics.recordInsert(tag, rowsInserted.applyAsInt(result), System.nanoTime() - start);
+      return result;
+    } catch (DataAccessException e) {
+      loaderMetrics.recordInsertFailure(tag, batch.size(), System.nanoTime() - start);
+      if (e.contains(BatchUpdateException.class)) {
+        SQLException be = (SQLException)e.getCause();
+        do {
+          log.error(method + "(): SQLException", be);
+          be = be.getNextException();
+        } while (be != null);
+      } else {
+        log.error(method + "(): DataAccessException", e);
+      }
+      throw e;
+    } catch (Exception e) {
+      loaderMetrics.recordInsertFailure(tag, batch.size(), System.nanoTime() - start);
+      log.error(method + "(): Exception", e);
+      throw e;
+    }
+  }
+
+  public long findByFirstName(String firstName, Consumer<Customer> consumer, String tag)
+  throws Exception {
+    log.info(String.format("findByFirstName() start: %s", tag));
+
+    long rowCount = 0;
+    long start = System.nanoTime();
+    try {
+      rowCount = CustomerQueries.streamByFirstName(jdbcTemplate, firstName, fetchSize, namePool, consumer);
+      loaderMetrics.recordQuery(tag, rowCount, System.nanoTime() - start);
+    } catch (Exception e) {
+      log.error("findByFirstName(): Exception", e);
+      throw e;
+    }
+
+    log.info(String.format("findByFirstName() end: %s, rows=%s", tag, rowCount));
+
+    return rowCount;
+  }
+
+  /**
+   * @param firstNames distinct and not null, at most a few hundred
+   */
+  public long findByFirstNames(List<String> firstNames, Consumer<Customer> consumer, String tag)
+  throws Exception {
+    log.info(String.format("findByFirstNames() start: %s, names=%s", tag, firstNames.size()));
+
+    long rowCount = 0;
+    if (firstNames.isEmpty()) {
+      return rowCount;
+    }
+    long start = System.nanoTime();
+    try {
+      rowCount = CustomerQueries.streamByFirstNames(jdbcTemplate, firstNames, fetchSize, namePool, consumer);
+      loaderMetrics.recordQuery(tag, rowCount, System.nanoTime() - start);
+    } catch (Exception e) {
+      log.error("findByFirstNames(): Exception", e);
+      throw e;
+    }
+
+    log.info(String.format("findByFirstNames() end: %s, rows=%s", tag, rowCount));
+
+    return rowCount;
+  }
+
+  public List<Customer> findByFirstNameCached(String firstName, String tag)
+  throws Exception {
+    log.info(String.format("findByFirstNameCached() start: %s", tag));
+
+    List<Customer> customers = null;
+    try {
+      customers = customerCache.get(firstName, name -> {
+        long start = System.nanoTime();
+        List<Customer> loaded = new ArrayList<Customer>();
+        CustomerQueries.streamByFirstName(jdbcTemplate, name, fetchSize, namePool, loaded::add);
+        loaderMetrics.recordQuery(tag, loaded.size(), System.nanoTime() - start);
+        return loaded;
+      });
+    } catch (Exception e) {
+      log.error("findByFirstNameCached(): Exception", e);
+      throw e;
+    }
+
+    log.info(String.format("findByFirstNameCached() end: %s, rows=%s", tag, customers.size()));
+
+    return customers;
+  }
+
+  public List<Customer> findByFirstName(String firstName, long afterId, int limit, String tag)
+  throws Exception {
+    log.info(String.format("findByFirstName() start: %s", tag));
+
+    List<Customer> page = null;
+    long start = System.nanoTime();
+    try {
+      page = CustomerQueries.pageByFirstName(jdbcTemplate, firstName, afterId, limit, namePool);
+      loaderMetrics.recordQuery(tag, page.size(), System.nanoTime() - start);
+    } catch (Exception e) {
+      log.error("findByFirstName(): Exception", e);
+      throw e;
+    }
+
+    log.info(String.format("findByFirstName() end: %s, afterId=%s, rows=%s", tag, afterId, page.size()));
+
+    return page;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CustomerRepository [batchSize=%s, fetchSize=%s, inListSize=%s, defaultMode=%s]",
+        batchSize, fetchSize, inListSize, customerInserter.getDefaultMode());
+  }
+
+}
@@ -0,0 +1,356 @@
+package hello;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Full scans and exports of common.customers in parallel: the table is split into ID ranges (partitions), each read
+ * by a pool-01 thread on its own connection.
+ * <ul>
+ * <li>Unordered: each thread hands its rows to the consumer as it reads them. Fastest; the consumer must be thread
+ * safe.</li>
+ * <li>Ordered: the rows reach the consumer in ID order, on the calling thread. The threads read ahead into bounded
+ * queues, at most one partition per pool-01 thread.</li>
+ * </ul>
+ * The ranges split MIN(ID)..MAX(ID) evenly (customer.scan.split=ID_RANGE), or into partitions with the same number of
+ * rows (ROW_COUNT), which costs one pass over the primary key index first but copes with gaps in the IDs (HILO blocks,
+ * deletes). customer.scan.partitions defaults to four per pool-01 thread, so that a slow partition does not leave the
+ * other threads idle at the end.
+ * <p>
+ * Rows inserted while the scan runs may or may not be read: each partition is read in its own transaction.
+ */
+@Component
+public class CustomerScanner {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerScanner.class);
+
+  static final String METRICS_TAG = "scan";
+
+  static final String SELECT_ID_RANGE = "select min(ID), max(ID) from common.customers";
+
+  // the ID step rows after the given one, read from the primary key index
+  static final String SELECT_NEXT_BOUNDARY =
+      "select ID from common.customers where ID >= ? order by ID offset %d rows fetch first 1 rows only";
+
+  static final String SELECT_PARTITION =
+      "select ID, FIRST_NAME, LAST_NAME from common.customers where ID between ? and ?";
+
+  static final String ORDER_BY_ID = " order by ID";
+
+  // rows handed to the consumer at a time
+  static final int BLOCK_ROWS = 1000;
+
+  // blocks an ordered partition reads ahead of the consumer
+  private static final int QUEUED_BLOCKS = 4;
+
+  private static final List<Customer> END_OF_PARTITION = new ArrayList<Customer>(0);
+
+  public enum Split {
+    ID_RANGE, ROW_COUNT
+  }
+
+  /**
+   * Receives the rows a block at a time, with at most {@link CustomerScanner#BLOCK_ROWS} rows.
+   */
+  public interface BlockConsumer {
+    void accept(List<Customer> block);
+  }
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  NamePool namePool;
+
+  @Autowired
+  LoaderMetrics loaderMetrics;
+
+  @Value("${customer.scan.partitions:0}")
+  int partitions;
+
+  @Value("${customer.scan.split:ID_RANGE}")
+  Split split;
+
+  @Value("${customer.query.fetch-size:500}")
+  int fetchSize;
+
+  public static ScanProgress scan(
+      boolean ordered, Consumer<Customer> consumer, CustomerScanner scanner, ThreadPoolTaskExecutor taskExecutor)
+  throws Exception {
+    return scanBlocks(ordered, block -> block.forEach(consumer), scanner, taskExecutor);
+  }
+
+  /**
+   * Writes the customers to the file, one "first{@code separator}last" line each, the format read by
+   * {@link CustomerFileReader}.
+   */
+  public static ScanProgress export(
+      Path file, char separator, boolean ordered, CustomerScanner scanner, ThreadPoolTaskExecutor taskExecutor)
+  throws Exception {
+    log.info(String.format("export() start: file=%s", file));
+
+    ScanProgress progress = null;
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      progress = scanBlocks(ordered, block -> {
+        StringBuilder lines = new StringBuilder(block.size() * 24);
+        for (Customer customer : block) {
+          lines.append(Objects.toString(customer.getFirstName(), "")).append(separator)
+              .append(Objects.toString(customer.getLastName(), "")).append('\n');
+        }
+        // one write per block, so the threads of an unordered export do not interleave lines
+        synchronized (writer) {
+          try {
+            writer.append(lines);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }, scanner, taskExecutor);
+    }
+
+    log.info(String.format("export() end: %s", progress));
+
+    return progress;
+  }
+
+  /**
+   * Scans the table into the consumer. If a partition or the consumer fails, the other partitions are stopped and
+   * the failure is thrown once they have.
+   */
+  public static ScanProgress scanBlocks(
+      boolean ordered, BlockConsumer consumer, CustomerScanner scanner, ThreadPoolTaskExecutor taskExecutor)
+  throws Exception {
+    log.info(String.format("scanBlocks() start: ordered=%s", ordered));
+
+    int threads = Math.max(taskExecutor.getMaxPoolSize(), 1);
+    ScanProgress progress = new ScanProgress(scanner.plan(scanner.partitions > 0 ? scanner.partitions : threads * 4));
+
+    List<Future<Long>> futures = new ArrayList<Future<Long>>();
+    try {
+      if (ordered) {
+        List<BlockingQueue<List<Customer>>> queues = new ArrayList<BlockingQueue<List<Customer>>>();
+        for (int partitionNo = 0; partitionNo < progress.getPartitions(); partitionNo++) {
+          // keep one partition per thread running ahead of the consumer
+          while (futures.size() < progress.getPartitions() && futures.size() < partitionNo + threads) {
+            BlockingQueue<List<Customer>> queue = new ArrayBlockingQueue<List<Customer>>(QUEUED_BLOCKS);
+            int next = futures.size();
+            Future<Long> future = submitOrdered(taskExecutor,
+                () -> scanner.scanPartition(progress, next, true, block -> put(queue, block, progress)),
+                next == partitionNo);
+            if (future == null) {
+              // pool-01 is full, read ahead again after this partition
+              break;
+            }
+            queues.add(queue);
+            futures.add(future);
+          }
+          BlockingQueue<List<Customer>> queue = queues.get(partitionNo);
+          for (List<Customer> block = queue.take(); block != END_OF_PARTITION; block = queue.take()) {
+            consumer.accept(block);
+          }
+          queues.set(partitionNo, null);
+          futures.get(partitionNo).get();
+        }
+      } else {
+        for (int partitionNo = 0; partitionNo < progress.getPartitions(); partitionNo++) {
+          int next = partitionNo;
+          futures.add(taskExecutor.submit(() -> scanner.scanPartition(progress, next, false, consumer)));
+        }
+        for (Future<Long> future : futures) {
+          future.get();
+        }
+      }
+    } catch (ExecutionException | InterruptedException | RuntimeException e) {
+      progress.cancel();
+      // do not return while a partition may still call the consumer
+      for (Future<Long> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException | CancellationException ignored) {
+          // the first failure is thrown below
+        }
+      }
+      log.error(String.format("scanBlocks(): stopped, %s", progress), e);
+      throw e;
+    } finally {
+      progress.finished();
+    }
+
+    log.info(String.format("scanBlocks() end: %s", progress));
+
+    return progress;
+  }
+
+  /**
+   * Submits an ordered partition without the caller-runs backpressure of pool-01: run on the consumer thread, the
+   * partition would wait forever for room in its queue, which only that thread reads. A partition ahead of the consumer
+   * is submitted only if pool-01 has room now (null if not). For the partition the consumer reads next, it waits for
+   * room up to the offer timeout: all partitions before it are done then, none holds a pool-01 thread.
+   */
+  private static Future<Long> submitOrdered(
+      ThreadPoolTaskExecutor taskExecutor, Callable<Long> partition, boolean readNext) {
+    if (!(taskExecutor instanceof LoaderScheduler)) {
+      return taskExecutor.submit(partition);
+    }
+    LoaderScheduler scheduler = (LoaderScheduler) taskExecutor;
+    try {
+      return scheduler.submitQueued(partition, readNext ? scheduler.getOfferTimeoutMillis() : 0);
+    } catch (TaskRejectedException e) {
+      if (readNext) {
+        throw e;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Hands a block of an ordered partition to the consumer thread, waiting while its queue is full. Gives up once the
+   * scan is cancelled: the consumer thread no longer reads the queues then.
+   */
+  private static void put(BlockingQueue<List<Customer>> queue, List<Customer> block, ScanProgress progress) {
+    try {
+      while (!queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+        if (progress.isCancelled()) {
+          throw new CancellationException("Scan cancelled");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Scan interrupted");
+    }
+  }
+
+  /**
+   * ID ranges of about the same size, first and last ID of each. Empty if the table is.
+   */
+  List<long[]> plan(int partitions) {
+    List<long[]> ranges = new ArrayList<long[]>(partitions);
+    long[] minMax = jdbcTemplate.queryForObject(SELECT_ID_RANGE,
+        (rs, rowNo) -> rs.getObject(1) == null ? null : new long[] { rs.getLong(1), rs.getLong(2) });
+    if (minMax == null) {
+      return ranges;
+    }
+
+    List<Long> boundaries = new ArrayList<Long>(partitions);
+    boundaries.add(minMax[0]);
+    if (split == Split.ROW_COUNT) {
+      long rows = jdbcTemplate.queryForObject("select count(*) from common.customers", Long.class);
+      long step = Math.max((rows + partitions - 1) / partitions, 1);
+      String sql = String.format(SELECT_NEXT_BOUNDARY, step);
+      for (int i = 1; i < partitions; i++) {
+        List<Long> next = jdbcTemplate.queryForList(sql, Long.class, boundaries.get(i - 1));
+        if (next.isEmpty()) {
+          break;
+        }
+        boundaries.add(next.get(0));
+      }
+    } else {
+      // in double, (max - min) * i may not fit a long
+      double span = (double) minMax[1] - minMax[0] + 1;
+      for (int i = 1; i < partitions; i++) {
+        long boundary = minMax[0] + (long) (span * i / partitions);
+        if (boundary > boundaries.get(boundaries.size() - 1) && boundary <= minMax[1]) {
+          boundaries.add(boundary);
+        }
+      }
+    }
+
+    for (int i = 0; i < boundaries.size(); i++) {
+      long last = i + 1 < boundaries.size() ? boundaries.get(i + 1) - 1 : minMax[1];
+      ranges.add(new long[] { boundaries.get(i), last });
+    }
+
+    log.info(String.format("plan(): %s partitions of IDs %s..%s, split=%s",
+        ranges.size(), minMax[0], minMax[1], split));
+
+    return ranges;
+  }
+
+  /**
+   * Reads one partition on the current thread and passes it on a block at a time; ends an ordered partition with
+   * END_OF_PARTITION also when it fails.
+   *
+   * @return number of rows read
+   */
+  long scanPartition(ScanProgress progress, int partitionNo, boolean ordered, BlockConsumer consumer) {
+    long start = System.nanoTime();
+    RowMapper<Customer> rowMapper = CustomerQueries.rowMapper(namePool);
+    long rows = 0;
+    try {
+      if (progress.isCancelled()) {
+        throw new CancellationException("Scan cancelled");
+      }
+      rows = jdbcTemplate.query(
+          con -> {
+            PreparedStatement ps = con.prepareStatement(ordered ? SELECT_PARTITION + ORDER_BY_ID : SELECT_PARTITION);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, progress.getFromId(partitionNo));
+            ps.setLong(2, progress.getToId(partitionNo));
+            return ps;
+          },
+          (ResultSet rs) -> {
+            long rowCount = 0;
+            List<Customer> block = new ArrayList<Customer>(BLOCK_ROWS);
+            while (rs.next()) {
+              block.add(rowMapper.mapRow(rs, (int) rowCount++));
+              if (block.size() == BLOCK_ROWS) {
+                if (progress.isCancelled()) {
+                  throw new CancellationException("Scan cancelled");
+                }
+                consumer.accept(block);
+                progress.scanned(partitionNo, block.size());
+                block = new ArrayList<Customer>(BLOCK_ROWS);
+              }
+            }
+            if (!block.isEmpty()) {
+              consumer.accept(block);
+              progress.scanned(partitionNo, block.size());
+            }
+            return rowCount;
+          });
+    } finally {
+      if (ordered) {
+        consumer.accept(END_OF_PARTITION);
+      }
+    }
+
+    loaderMetrics.recordQuery(METRICS_TAG, rows, System.nanoTime() - start);
+    int partitionsDone = progress.done(partitionNo);
+    log.info(String.format("scanPartition(): partition %s done, rows=%s, %s/%s partitions",
+        partitionNo, rows, partitionsDone, progress.getPartitions()));
+
+    return rows;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CustomerScanner [partitions=%s, split=%s, fetchSize=%s]", partitions, split, fetchSize);
+  }
+
+}
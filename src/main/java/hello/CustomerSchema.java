@@ -0,0 +1,114 @@
+package hello;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * DDL of the customers tables, applied by {@link SchemaManager}. The ID column depends on the {@link IdAllocator}
+ * strategy. The stage table is used by {@link StagingInsert}.
+ */
+final class CustomerSchema {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerSchema.class);
+
+  // length of FIRST_NAME and LAST_NAME
+  static final int NAME_LENGTH = 255;
+
+  private CustomerSchema() {
+  }
+
+  static String createTable(IdAllocator idAllocator) {
+    String id = idAllocator.isClientAssigned()
+        ? "ID BIGINT  NOT NULL , "
+        : String.format(
+            "ID BIGINT  NOT NULL  GENERATED ALWAYS AS IDENTITY (START WITH 1001, INCREMENT BY 1, CACHE %s ) , ",
+            idAllocator.getCacheSize());
+    return "create table common.customers ("
+        + id
+        + "FIRST_NAME VARCHAR(" + NAME_LENGTH + ") , "
+        + "LAST_NAME VARCHAR(" + NAME_LENGTH + ") , "
+        + "PRIMARY KEY (ID)"
+        + ")";
+  }
+
+  /**
+   * True if the name fits the table. Checks characters, which matches VARCHAR bytes for single-byte data only.
+   */
+  static boolean isValidName(String name) {
+    return name != null && name.length() <= NAME_LENGTH;
+  }
+
+  static String createStageTable() {
+    // no keys or identity: rows are only appended and moved to common.customers by load ID
+    return "create table common.customers_stage ("
+        + "LOAD_ID BIGINT NOT NULL , "
+        + "ID BIGINT , "
+        + "FIRST_NAME VARCHAR(" + NAME_LENGTH + ") , "
+        + "LAST_NAME VARCHAR(" + NAME_LENGTH + ")"
+        + ")";
+  }
+
+  static final String CREATE_STAGE_INDEX =
+      "create index common.customers_stage_ix1 on common.customers_stage (LOAD_ID)";
+
+  static String createSequence(IdAllocator idAllocator) {
+    // each value is the first ID of a block, see IdAllocator
+    return String.format("create sequence common.customers_id_seq as BIGINT START WITH 1001 INCREMENT BY %s CACHE 20",
+        idAllocator.getBlockSize());
+  }
+
+  static final String CREATE_SCHEMA_VERSION_TABLE = "create table common.schema_version ("
+      + "VERSION INTEGER NOT NULL , "
+      + "DESCRIPTION VARCHAR(255) , "
+      + "INSTALLED_ON TIMESTAMP NOT NULL , "
+      + "PRIMARY KEY (VERSION)"
+      + ")";
+
+  // progress of the partitions of a BulkLoadJob
+  static final String CREATE_LOAD_CHECKPOINT_TABLE = "create table common.load_checkpoint ("
+      + "JOB_ID VARCHAR(255) NOT NULL , "
+      + "PARTITION_NO INTEGER NOT NULL , "
+      + "LOAD_ID BIGINT NOT NULL , "
+      + "START_OFFSET BIGINT NOT NULL , "
+      + "END_OFFSET BIGINT NOT NULL , "
+      + "NEXT_OFFSET BIGINT NOT NULL , "
+      + "ROWS_LOADED BIGINT NOT NULL , "
+      + "STATUS VARCHAR(10) NOT NULL , "
+      + "UPDATED_ON TIMESTAMP NOT NULL , "
+      + "PRIMARY KEY (JOB_ID, PARTITION_NO)"
+      + ")";
+
+  static final String FIRST_NAME_INDEX = "CUSTOMERS_IX1";
+
+  /**
+   * Index for the lookups by FIRST_NAME. With {@code includeLastName} it also holds LAST_NAME and ID, so the lookups
+   * read the index only; that makes the index larger and inserts slower.
+   */
+  static String createFirstNameIndex(boolean includeLastName) {
+    return "create index common." + FIRST_NAME_INDEX + " on common.customers "
+        + (includeLastName ? "(FIRST_NAME, LAST_NAME, ID)" : "(FIRST_NAME)");
+  }
+
+  static final String DROP_FIRST_NAME_INDEX = "drop index common." + FIRST_NAME_INDEX;
+
+  /**
+   * Drops all tables and the ID sequence, including the data. Errors are logged, objects may not exist.
+   */
+  static void drop(JdbcTemplate jdbcTemplate) {
+    dropQuietly(jdbcTemplate, "drop table common.customers");
+    dropQuietly(jdbcTemplate, "drop table common.customers_stage");
+    dropQuietly(jdbcTemplate, "drop sequence common.customers_id_seq");
+    dropQuietly(jdbcTemplate, "drop table common.load_checkpoint");
+    dropQuietly(jdbcTemplate, "drop table common.schema_version");
+  }
+
+  private static void dropQuietly(JdbcTemplate jdbcTemplate, String sql) {
+    try {
+      jdbcTemplate.execute(sql);
+    } catch (Exception e) {
+      log.error(String.format("Failed to %s. Continue processing.", sql));
+    }
+  }
+
+}
@@ -1,119 +1,223 @@
-package hello;
-
-import java.sql.BatchUpdateException;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.util.Arrays;
-import java.util.List;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
-
-@Service
-public class CustomerService {
-  
-  private static final Logger log = LoggerFactory.getLogger(CustomerService.class);
-  
-  @Autowired
-  JdbcTemplate jdbcTemplate;
-  
-  @Transactional(isolation=Isolation.READ_COMMITTED)
-  public void createTable() 
-  throws Exception {
-    log.info("createTable() start");
-    
-    try {
-      try {
-        jdbcTemplate.execute("drop table common.customers");
-      } catch (Exception e) {
-        log.error("Failed to drop table. Continue processing.");
-      }
-      
-      jdbcTemplate.execute("create table common.customers ("
-          + "ID BIGINT  NOT NULL  GENERATED ALWAYS AS IDENTITY (START WITH 1001, INCREMENT BY 1, NO CACHE ) , "
-          + "FIRST_NAME VARCHAR(255) , "
-          + "LAST_NAME VARCHAR(255) , "
-          + "PRIMARY KEY (ID)"
-          + ")");
-      
-    } catch (DataAccessException e) {
-      log.error("createTable(): DataAccessException", e);
-      throw e;
-    }
-    
-    log.info("createTable() end");
-    
-    return;
-  }
-  
-
-  @Transactional(isolation=Isolation.READ_COMMITTED)
-  public void insertData(List<Object[]> splitNames) 
-  throws Exception {
-    log.info("insertData() start");
-    
-    final String strSqlInsert = "insert into common.customers(FIRST_NAME, LAST_NAME) values (?, ?)";
-
-    try {
-      int[][] updateCounts = jdbcTemplate.batchUpdate(
-          strSqlInsert, splitNames, 3, 
-          new ParameterizedPreparedStatementSetter<Object[]>() {
-
-            @Override
-            public void setValues(PreparedStatement ps, Object[] argument) throws SQLException {
-              int i = 1, j = 0;
-              ps.setString(i++, String.valueOf((argument[j++])));
-              ps.setString(i++, String.valueOf((argument[j++])));
-            }
-            
-          });
-      log.info(String.format("Update counts: %s", Arrays.deepToString(updateCounts)));
-    } catch (DataAccessException e) {
-      if (e.contains(BatchUpdateException.class)) {
-        SQLException be = (SQLException)e.getCause();
-        do {
-          log.error("insertData(): SQLException", be);
-          be = be.getNextException();
-        } while (be != null);
-      } else {
-        log.error("insertData(): DataAccessException", e);
-      }
-      throw e;
-    } catch (Exception e) {
-      log.error("insertData(): Exception", e);
-      throw e;
-    }
-    
-    log.info("insertData() end");
-  }
-  
-  
-  @Transactional(propagation=Propagation.SUPPORTS)
-  public void findByFirstName(String firstName)
-  throws Exception {
-    log.info("findByFirstName() start");
-    
-    try {
-      final String strSqlSelect = "select * from common.customers where FIRST_NAME = ?";
-      
-      jdbcTemplate.query(
-          strSqlSelect, new Object[] { firstName },
-          (rs, rowNo) -> new Customer(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name"))
-        ).forEach(customer -> log.info(customer.toString()));
-    } catch (Exception e) {
-      log.error("findByFirstName(): Exception", e);
-      throw e;
-    }
-    
-    log.info("findByFirstName() end");
-  }
-  
-  
-}
+package hello;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * The synchronous execution strategy over {@link CustomerRepository}: each call is one transaction on the calling
+ * thread. Also the loads with checkpoints, generated keys and partial commits.
+ */
+@Service
+public class CustomerService {
+  
+  private static final Logger log = LoggerFactory.getLogger(CustomerService.class);
+  
+  static final String METRICS_TAG = "sync";
+  
+  @Autowired
+  CustomerRepository customerRepository;
+  
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  
+  @Autowired
+  IdAllocator idAllocator;
+  
+  @Autowired
+  LoaderMetrics loaderMetrics;
+  
+  @Autowired
+  DataLogger dataLogger;
+  
+  public int getBatchSize() {
+    return customerRepository.getBatchSize();
+  }
+  
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void createTable() 
+  throws Exception {
+    customerRepository.createTable(METRICS_TAG);
+  }
+  
+
+  public static long insertDataStreaming(Iterator<Object[]> rows, int chunkSize, CustomerService custService) 
+  throws Exception {
+    log.info("insertDataStreaming() start");
+    
+    long rowCount = 0;
+    // the same batch is reused, so at most chunkSize rows are held at any time
+    CustomerBatch batch = new CustomerBatch(chunkSize);
+    while (rows.hasNext()) {
+      Object[] name = rows.next();
+      batch.add(String.valueOf(name[0]), String.valueOf(name[1]));
+      if (batch.isFull() || !rows.hasNext()) {
+        custService.insertData(batch);
+        rowCount += batch.size();
+        batch.clear();
+      }
+    }
+    
+    log.info(String.format("insertDataStreaming() end: rows=%s", rowCount));
+    
+    return rowCount;
+  }
+  
+  public static long insertDataStreaming(CustomerFileReader reader, int chunkSize, CustomerService custService) 
+  throws Exception {
+    log.info("insertDataStreaming() start");
+    
+    long rowCount = 0;
+    CustomerBatch batch = new CustomerBatch(chunkSize);
+    while (reader.read(batch) > 0) {
+      custService.insertData(batch);
+      rowCount += batch.size();
+      batch.clear();
+    }
+    
+    log.info(String.format("insertDataStreaming() end: rows=%s", rowCount));
+    
+    return rowCount;
+  }
+  
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void insertData(List<Object[]> splitNames) 
+  throws Exception {
+    insertData(CustomerBatch.of(splitNames));
+  }
+  
+  
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void insertData(CustomerBatch batch)
+  throws Exception {
+    insertData(batch, customerRepository.getDefaultMode());
+  }
+
+
+  /**
+   * Inserts the batch with the given strategy instead of customer.insert.mode, see {@link CustomerInserter}.
+   */
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void insertData(CustomerBatch batch, CustomerInserter.Mode mode)
+  throws Exception {
+    customerRepository.insert(batch, mode, METRICS_TAG);
+  }
+
+
+  /**
+   * Inserts the batch and moves the checkpoint of its {@link BulkLoadJob} partition from {@code from} to {@code to}
+   * in the same transaction, so a resumed load starts right after the rows committed here. Rows of a staged job go
+   * to the stage table until {@link #publishLoad(String, long)}.
+   */
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public void insertData(CustomerBatch batch, LoadCheckpoint from, LoadCheckpoint to)
+  throws Exception {
+    log.info("insertData() start");
+
+    try {
+      if (to.isStaged()) {
+        // metered when published
+        idAllocator.assign(batch);
+        int[][] updateCounts = StagingInsert.stage(jdbcTemplate, batch, getBatchSize(), to.getLoadId());
+        dataLogger.updateCounts(log, updateCounts);
+      } else {
+        insertData(batch);
+      }
+      LoadCheckpoints.advance(jdbcTemplate, from, to);
+    } catch (Exception e) {
+      log.error("insertData(): Exception", e);
+      throw e;
+    }
+
+    log.info(String.format("insertData() end: %s", to));
+  }
+
+
+  /**
+   * Moves the rows of a staged {@link BulkLoadJob} to common.customers and marks the job published, as one
+   * transaction: readers see none or all of the job's rows. With customer.insert.mode=UPSERT only the names that are
+   * not in common.customers yet are moved.
+   *
+   * @return number of rows moved
+   */
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public int publishLoad(String jobId, long loadId)
+  throws Exception {
+    log.info("publishLoad() start");
+
+    int rows = 0;
+    long start = System.nanoTime();
+    try {
+      rows = StagingInsert.move(jdbcTemplate, idAllocator.isClientAssigned(), loadId,
+          customerRepository.getDefaultMode() == CustomerInserter.Mode.UPSERT);
+      LoadCheckpoints.publish(jdbcTemplate, jobId);
+      loaderMetrics.recordInsert(METRICS_TAG, rows, System.nanoTime() - start);
+    } catch (Exception e) {
+      log.error("publishLoad(): Exception", e);
+      throw e;
+    }
+
+    log.info(String.format("publishLoad() end: jobId=%s, rows=%s", jobId, rows));
+
+    return rows;
+  }
+
+
+  /**
+   * Inserts the batch and returns the IDs of its rows, in row order.
+   */
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public long[] insertDataReturningKeys(CustomerBatch batch)
+  throws Exception {
+    return customerRepository.insertReturningKeys(batch, METRICS_TAG);
+  }
+
+
+  /**
+   * Inserts the rows the database accepts and commits them; the rejected rows are returned instead of rolling back
+   * the whole batch. See {@link ResilientInserter} for the retries.
+   */
+  @Transactional(isolation=Isolation.READ_COMMITTED)
+  public BatchInsertOutcome insertDataPartial(CustomerBatch batch, int partialBatchSize)
+  throws Exception {
+    return customerRepository.insertPartial(batch, partialBatchSize, METRICS_TAG);
+  }
+
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public void findByFirstName(String firstName)
+  throws Exception {
+    findByFirstName(firstName, customer -> log.info(customer.toString()));
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public long findByFirstName(String firstName, Consumer<Customer> consumer)
+  throws Exception {
+    return customerRepository.findByFirstName(firstName, consumer, METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public List<Customer> findByFirstNameCached(String firstName)
+  throws Exception {
+    return customerRepository.findByFirstNameCached(firstName, METRICS_TAG);
+  }
+  
+  
+  @Transactional(propagation=Propagation.SUPPORTS)
+  public List<Customer> findByFirstName(String firstName, long afterId, int limit)
+  throws Exception {
+    return customerRepository.findByFirstName(firstName, afterId, limit, METRICS_TAG);
+  }
+  
+  
+}
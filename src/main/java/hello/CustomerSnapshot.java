@@ -0,0 +1,331 @@
+package hello;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process copy of common.customers for scans and lookups by first name that do not go to the database, an
+ * alternative read path to {@link CustomerService}.
+ * <p>
+ * The rows are held in columns in off-heap buffers: the IDs (8 bytes per row) and the codes of the first and last
+ * names (4 bytes each) in a {@link NameDictionary}, which stores each distinct name once. A first name index maps each
+ * first name to the rows that have it (4 bytes per row). A snapshot of N rows takes about 20 * N bytes of direct
+ * memory and almost no heap, and {@link #scan(RowVisitor)} and the lookups by {@link RowVisitor} allocate nothing per
+ * row.
+ * <p>
+ * {@link #load()} reads the whole table, {@link #refresh()} adds the rows with an ID above the highest ID loaded (the
+ * watermark). Readers see the snapshot as of the last load or refresh and are never blocked by one. Refresh does not
+ * see updates or deletes, nor rows committed after a refresh with an ID below the watermark: with several loaders
+ * (or HILO IDs) commits are not in ID order, so run a full load() from time to time.
+ */
+@Component
+public class CustomerSnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerSnapshot.class);
+
+  static final String METRICS_TAG = "snapshot";
+
+  static final String SELECT_AFTER_ID = "select ID, FIRST_NAME, LAST_NAME from common.customers where ID > ?";
+
+  private static final int INITIAL_ROWS = 1024;
+
+  /**
+   * Receives the rows of a scan or lookup; names are dictionary codes, see {@link CustomerSnapshot#name(int)}.
+   */
+  public interface RowVisitor {
+    void visit(long id, int firstName, int lastName);
+  }
+
+  /**
+   * Immutable once built. A refresh builds a new one from a copy.
+   */
+  private static final class Columns {
+    final int rows;
+    final long watermark;
+    final NameDictionary names;
+    // long per row
+    final ByteBuffer ids;
+    // int per row
+    final ByteBuffer firstNames;
+    // int per row
+    final ByteBuffer lastNames;
+    // int per name code: first row of the name in indexRows; one more entry holds the end
+    final ByteBuffer indexStarts;
+    // int per row: row numbers ordered by first name
+    final ByteBuffer indexRows;
+
+    Columns(int rows, long watermark, NameDictionary names, ByteBuffer ids, ByteBuffer firstNames,
+        ByteBuffer lastNames, ByteBuffer indexStarts, ByteBuffer indexRows) {
+      this.rows = rows;
+      this.watermark = watermark;
+      this.names = names;
+      this.ids = ids;
+      this.firstNames = firstNames;
+      this.lastNames = lastNames;
+      this.indexStarts = indexStarts;
+      this.indexRows = indexRows;
+    }
+
+    long capacity() {
+      return (long) ids.capacity() + firstNames.capacity() + lastNames.capacity() + indexStarts.capacity()
+          + indexRows.capacity() + names.capacity();
+    }
+  }
+
+  /**
+   * Appends rows to a copy of a snapshot's columns, then builds the index.
+   */
+  private static final class Builder {
+    int rows;
+    long watermark;
+    final NameDictionary names;
+    ByteBuffer ids;
+    ByteBuffer firstNames;
+    ByteBuffer lastNames;
+
+    Builder() {
+      this.watermark = Long.MIN_VALUE;
+      this.names = new NameDictionary();
+      this.ids = OffHeap.allocate(INITIAL_ROWS * 8L);
+      this.firstNames = OffHeap.allocate(INITIAL_ROWS * 4L);
+      this.lastNames = OffHeap.allocate(INITIAL_ROWS * 4L);
+    }
+
+    Builder(Columns from) {
+      this.rows = from.rows;
+      this.watermark = from.watermark;
+      this.names = from.names.copy();
+      this.ids = OffHeap.copy(from.ids, rows * 8, OffHeap.allocate(from.ids.capacity()));
+      this.firstNames = OffHeap.copy(from.firstNames, rows * 4, OffHeap.allocate(from.firstNames.capacity()));
+      this.lastNames = OffHeap.copy(from.lastNames, rows * 4, OffHeap.allocate(from.lastNames.capacity()));
+    }
+
+    void add(long id, String firstName, String lastName) {
+      ids = OffHeap.ensureCapacity(ids, rows * 8, (rows + 1) * 8L);
+      firstNames = OffHeap.ensureCapacity(firstNames, rows * 4, (rows + 1) * 4L);
+      lastNames = OffHeap.ensureCapacity(lastNames, rows * 4, (rows + 1) * 4L);
+      ids.putLong(rows << 3, id);
+      firstNames.putInt(rows << 2, names.encode(firstName));
+      lastNames.putInt(rows << 2, names.encode(lastName));
+      watermark = Math.max(watermark, id);
+      rows++;
+    }
+
+    /**
+     * Counting sort of the row numbers by first name code; rows without a first name are left out.
+     */
+    Columns build() {
+      int codes = names.size();
+      ByteBuffer indexStarts = OffHeap.allocate((codes + 1) * 4L);
+      for (int row = 0; row < rows; row++) {
+        int code = firstNames.getInt(row << 2);
+        if (code != NameDictionary.NULL) {
+          indexStarts.putInt((code + 1) << 2, indexStarts.getInt((code + 1) << 2) + 1);
+        }
+      }
+      int[] next = new int[codes];
+      for (int code = 0; code < codes; code++) {
+        next[code] = indexStarts.getInt(code << 2);
+        indexStarts.putInt((code + 1) << 2, next[code] + indexStarts.getInt((code + 1) << 2));
+      }
+      ByteBuffer indexRows = OffHeap.allocate(Math.max(indexStarts.getInt(codes << 2), 1) * 4L);
+      for (int row = 0; row < rows; row++) {
+        int code = firstNames.getInt(row << 2);
+        if (code != NameDictionary.NULL) {
+          indexRows.putInt(next[code]++ << 2, row);
+        }
+      }
+      return new Columns(rows, watermark, names, ids, firstNames, lastNames, indexStarts, indexRows);
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final LoaderMetrics loaderMetrics;
+
+  private final int fetchSize;
+
+  private volatile Columns columns = new Builder().build();
+
+  public CustomerSnapshot(
+      JdbcTemplate jdbcTemplate,
+      LoaderMetrics loaderMetrics,
+      @Value("${customer.query.fetch-size:500}") int fetchSize) {
+    super();
+    this.jdbcTemplate = jdbcTemplate;
+    this.loaderMetrics = loaderMetrics;
+    this.fetchSize = fetchSize;
+  }
+
+  /**
+   * Reads the whole table into a new snapshot.
+   *
+   * @return number of rows loaded
+   */
+  public synchronized int load() {
+    log.info("load() start");
+
+    Builder builder = read(null);
+    columns = builder != null ? builder.build() : new Builder().build();
+
+    log.info(String.format("load() end: %s", this));
+
+    return columns.rows;
+  }
+
+  /**
+   * Adds the rows with an ID above the watermark. The current snapshot is copied only when there are new rows.
+   *
+   * @return number of rows added
+   */
+  public synchronized int refresh() {
+    log.info("refresh() start");
+
+    Columns current = columns;
+    Builder builder = read(current);
+    if (builder != null) {
+      columns = builder.build();
+    }
+    int added = columns.rows - current.rows;
+
+    log.info(String.format("refresh() end: rows=%s, %s", added, this));
+
+    return added;
+  }
+
+  /**
+   * Reads the rows after the watermark of {@code from} (all rows if null) into a builder holding a copy of it.
+   *
+   * @return the builder, null if there were no rows to read
+   */
+  private Builder read(Columns from) {
+    Builder[] builder = new Builder[1];
+    long start = System.nanoTime();
+
+    jdbcTemplate.query(
+        con -> {
+          PreparedStatement ps = con.prepareStatement(SELECT_AFTER_ID);
+          ps.setFetchSize(fetchSize);
+          ps.setLong(1, from != null ? from.watermark : Long.MIN_VALUE);
+          return ps;
+        },
+        rs -> {
+          if (builder[0] == null) {
+            builder[0] = from != null ? new Builder(from) : new Builder();
+          }
+          builder[0].add(rs.getLong(1), rs.getString(2), rs.getString(3));
+        });
+
+    long rows = builder[0] == null ? 0 : builder[0].rows - (from != null ? from.rows : 0);
+    loaderMetrics.recordQuery(METRICS_TAG, rows, System.nanoTime() - start);
+    return builder[0];
+  }
+
+  public int size() {
+    return columns.rows;
+  }
+
+  /**
+   * Highest ID in the snapshot, Long.MIN_VALUE when it is empty.
+   */
+  public long getWatermark() {
+    return columns.watermark;
+  }
+
+  /**
+   * Distinct first and last names.
+   */
+  public int getNameCount() {
+    return columns.names.size();
+  }
+
+  /**
+   * Direct memory held, in bytes.
+   */
+  public long getOffHeapBytes() {
+    return columns.capacity();
+  }
+
+  /**
+   * Name of a dictionary code passed to a {@link RowVisitor}, null for {@link NameDictionary#NULL}. Decoding creates
+   * a String; compare codes instead where possible.
+   */
+  public String name(int code) {
+    return columns.names.decode(code);
+  }
+
+  /**
+   * Code of the name, for comparing with the codes passed to a {@link RowVisitor}; -1 if no customer has it.
+   */
+  public int code(String name) {
+    return columns.names.code(name);
+  }
+
+  /**
+   * Passes every row to the visitor, in load order.
+   *
+   * @return number of rows visited
+   */
+  public long scan(RowVisitor visitor) {
+    Columns snapshot = columns;
+    for (int row = 0; row < snapshot.rows; row++) {
+      visit(snapshot, row, visitor);
+    }
+    return snapshot.rows;
+  }
+
+  /**
+   * Passes the rows with the first name to the visitor, in load order.
+   *
+   * @return number of rows visited
+   */
+  public long findByFirstName(String firstName, RowVisitor visitor) {
+    return findByFirstName(columns, firstName, visitor);
+  }
+
+  public long findByFirstName(String firstName, Consumer<Customer> consumer) {
+    // one read of the columns for the rows and the decoding: a refresh() in between would mix two dictionaries
+    Columns snapshot = columns;
+    return findByFirstName(snapshot, firstName,
+        (id, first, last) -> consumer.accept(new Customer(id, firstName, snapshot.names.decode(last))));
+  }
+
+  public List<Customer> findByFirstName(String firstName) {
+    List<Customer> customers = new ArrayList<Customer>();
+    findByFirstName(firstName, customers::add);
+    return customers;
+  }
+
+  private static long findByFirstName(Columns snapshot, String firstName, RowVisitor visitor) {
+    int code = snapshot.names.code(firstName);
+    if (code == NameDictionary.NULL) {
+      return 0;
+    }
+    int end = snapshot.indexStarts.getInt((code + 1) << 2);
+    for (int i = snapshot.indexStarts.getInt(code << 2); i < end; i++) {
+      visit(snapshot, snapshot.indexRows.getInt(i << 2), visitor);
+    }
+    return end - snapshot.indexStarts.getInt(code << 2);
+  }
+
+  private static void visit(Columns snapshot, int row, RowVisitor visitor) {
+    visitor.visit(snapshot.ids.getLong(row << 3), snapshot.firstNames.getInt(row << 2),
+        snapshot.lastNames.getInt(row << 2));
+  }
+
+  @Override
+  public String toString() {
+    Columns snapshot = columns;
+    return String.format("CustomerSnapshot [rows=%s, names=%s, watermark=%s, offHeapBytes=%s]",
+        snapshot.rows, snapshot.names.size(), snapshot.watermark, snapshot.capacity());
+  }
+
+}
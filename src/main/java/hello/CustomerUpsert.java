@@ -0,0 +1,402 @@
+package hello;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The UPSERT insert strategy (customer.insert.mode=UPSERT): inserts only the customers whose first and last name are
+ * not in common.customers yet, so loading the same names again does not duplicate them.
+ * <p>
+ * The rows are written with {@link #MERGE_SQL} in JDBC batches of batchSize rows on DB2, and with
+ * {@link #INSERT_MISSING_SQL} on databases without MERGE ... USING, such as H2. In front of the statements, a
+ * {@link NameKeySet} of the names known to be in the table skips duplicates in memory: it is loaded from the table on
+ * first use (customer.upsert.key-set=true) and takes the names of each upserted batch once it commits. The set compares
+ * the names themselves, so only a name that is in the table is skipped. A name missing from the set still goes to the
+ * database, so rows written by other loaders are never duplicated because of it.
+ * <p>
+ * {@link #upsertPartial} is the same with row by row failures. {@link #upsertReturningKeys} needs the IDs of the
+ * names in the table, so it looks them up and inserts only the names it did not find.
+ * <p>
+ * The table has no unique key on the names: two transactions upserting the same new name at the same time can both
+ * insert it. The set assumes customers are not deleted; call {@link #reset()} if they are. {@link SchemaManager} does
+ * when it drops or creates common.customers.
+ */
+@Component
+public class CustomerUpsert implements InsertStrategy {
+
+  private static final Logger log = LoggerFactory.getLogger(CustomerUpsert.class);
+
+  private static final String NAME_TYPE = "varchar(" + CustomerSchema.NAME_LENGTH + ")";
+
+  static final String MERGE_SQL =
+      "merge into common.customers c "
+      + "using (values (cast(? as " + NAME_TYPE + "), cast(? as " + NAME_TYPE + "))) n (FIRST_NAME, LAST_NAME) "
+      + "on c.FIRST_NAME = n.FIRST_NAME and c.LAST_NAME = n.LAST_NAME "
+      + "when not matched then insert (FIRST_NAME, LAST_NAME) values (n.FIRST_NAME, n.LAST_NAME)";
+
+  static final String MERGE_WITH_ID_SQL =
+      "merge into common.customers c "
+      + "using (values (cast(? as bigint), cast(? as " + NAME_TYPE + "), cast(? as " + NAME_TYPE + "))) "
+      + "n (ID, FIRST_NAME, LAST_NAME) "
+      + "on c.FIRST_NAME = n.FIRST_NAME and c.LAST_NAME = n.LAST_NAME "
+      + "when not matched then insert (ID, FIRST_NAME, LAST_NAME) values (n.ID, n.FIRST_NAME, n.LAST_NAME)";
+
+  static final String INSERT_MISSING_SQL =
+      "insert into common.customers(FIRST_NAME, LAST_NAME) select ?, ? "
+      + "where not exists (select 1 from common.customers where FIRST_NAME = ? and LAST_NAME = ?)";
+
+  static final String INSERT_MISSING_WITH_ID_SQL =
+      "insert into common.customers(ID, FIRST_NAME, LAST_NAME) select ?, ?, ? "
+      + "where not exists (select 1 from common.customers where FIRST_NAME = ? and LAST_NAME = ?)";
+
+  static final String SELECT_NAMES = "select FIRST_NAME, LAST_NAME from common.customers";
+
+  private final boolean useKeySet;
+
+  private final int fetchSize;
+
+  private final int inListSize;
+
+  private final NamePool namePool;
+
+  private volatile NameKeySet keySet;
+
+  // null until the first upsert looks at the database
+  private volatile Boolean merge;
+
+  private final LongAdder rowsInserted = new LongAdder();
+
+  private final LongAdder rowsMatched = new LongAdder();
+
+  private final LongAdder rowsSkipped = new LongAdder();
+
+  public CustomerUpsert(
+      @Value("${customer.upsert.key-set:true}") boolean useKeySet,
+      @Value("${customer.query.fetch-size:500}") int fetchSize,
+      @Value("${customer.query.in-list-size:64}") int inListSize,
+      NamePool namePool) {
+    super();
+    this.useKeySet = useKeySet;
+    this.fetchSize = fetchSize;
+    this.inListSize = inListSize;
+    this.namePool = namePool;
+  }
+
+  @Override
+  public int[][] insert(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    UpsertResult result = upsert(jdbcTemplate, batch, batchSize);
+    log.info(String.format("insert(): %s", result));
+    return result.getUpdateCounts();
+  }
+
+  /**
+   * Upserts the batch in the caller's transaction. Rows with a null name are always inserted, as SQL never finds
+   * them equal to another row.
+   */
+  public UpsertResult upsert(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    NameKeySet known = useKeySet ? keySet(jdbcTemplate) : null;
+    UpsertResult result = new UpsertResult();
+    Set<List<String>> batchNames = new HashSet<List<String>>();
+    CustomerBatch pending = pending(batch, known, batchNames, result);
+
+    int[][] updateCounts = batchUpdate(jdbcTemplate, pending, batchSize);
+    for (int[] counts : updateCounts) {
+      for (int count : counts) {
+        // as in DataLogger, a row without a count (SUCCESS_NO_INFO) is taken as written
+        if (count == 0) {
+          result.matched();
+        } else {
+          result.inserted();
+        }
+      }
+    }
+    result.setUpdateCounts(updateCounts);
+
+    if (known != null) {
+      addAfterCommit(known, batchNames);
+    }
+    record(result);
+
+    return result;
+  }
+
+  /**
+   * Like {@link #upsert(JdbcTemplate, CustomerBatch, int)}, but a rejected row does not fail the call, see
+   * {@link CustomerBatchSetter#batchUpdatePartial(JdbcTemplate, String, CustomerBatch, int)}. The rows skipped in
+   * memory are reported as matched.
+   */
+  public BatchInsertOutcome upsertPartial(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    NameKeySet known = useKeySet ? keySet(jdbcTemplate) : null;
+    UpsertResult result = new UpsertResult();
+    Set<List<String>> batchNames = new HashSet<List<String>>();
+    CustomerBatch pending = pending(batch, known, batchNames, result);
+
+    boolean useMerge = useMerge(jdbcTemplate);
+    BatchInsertOutcome outcome = CustomerBatchSetter.batchUpdatePartial(
+        jdbcTemplate, sql(useMerge, pending.hasIds()), pending, setter(pending, useMerge), batchSize);
+    for (int i = 0; i < outcome.getRowsInserted(); i++) {
+      result.inserted();
+    }
+    for (int i = 0; i < outcome.getRowsMatched(); i++) {
+      result.matched();
+    }
+    outcome.matched(result.getRowsSkipped());
+
+    if (known != null) {
+      CustomerBatch failed = outcome.getFailedRows();
+      for (int i = 0; i < failed.size(); i++) {
+        batchNames.remove(Arrays.asList(failed.getFirstName(i), failed.getLastName(i)));
+      }
+      addAfterCommit(known, batchNames);
+    }
+    record(result);
+    log.info(String.format("upsertPartial(): %s", result));
+
+    return outcome;
+  }
+
+  /**
+   * Upserts the batch and sets the ID of each row into it: the ID of the customer with the name if the table has one
+   * (the lowest if it has several), otherwise the ID of the row inserted for it. The names are looked up with
+   * "FIRST_NAME in (...)" queries of customer.query.in-list-size names; the ones not found are inserted once each, with
+   * their generated keys read back. Rows with a null name are always inserted.
+   *
+   * @return the IDs, in row order
+   */
+  public long[] upsertReturningKeys(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    UpsertResult result = new UpsertResult();
+    Set<List<String>> batchNames = new HashSet<List<String>>();
+    Set<String> firstNames = new LinkedHashSet<String>();
+    for (int i = 0; i < batch.size(); i++) {
+      if (batch.getFirstName(i) != null && batch.getLastName(i) != null) {
+        batchNames.add(Arrays.asList(batch.getFirstName(i), batch.getLastName(i)));
+        firstNames.add(batch.getFirstName(i));
+      }
+    }
+
+    Map<List<String>, Long> existing = new HashMap<List<String>, Long>();
+    List<String> lookup = new ArrayList<String>(firstNames);
+    for (int from = 0; from < lookup.size(); from += inListSize) {
+      CustomerQueries.streamByFirstNames(jdbcTemplate, lookup.subList(from, Math.min(from + inListSize, lookup.size())),
+          fetchSize, namePool, customer -> {
+            List<String> name = Arrays.asList(customer.getFirstName(), customer.getLastName());
+            if (batchNames.contains(name)) {
+              existing.merge(name, customer.getId(), Math::min);
+            }
+          });
+    }
+
+    // row of the batch -> row of "missing", for the rows not in the table
+    int[] insertedAs = new int[batch.size()];
+    Map<List<String>, Integer> missingNames = new HashMap<List<String>, Integer>();
+    CustomerBatch missing = new CustomerBatch(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      insertedAs[i] = -1;
+      if (batch.getFirstName(i) != null && batch.getLastName(i) != null) {
+        List<String> name = Arrays.asList(batch.getFirstName(i), batch.getLastName(i));
+        if (existing.containsKey(name)) {
+          result.matched();
+          continue;
+        }
+        Integer earlier = missingNames.putIfAbsent(name, missing.size());
+        if (earlier != null) {
+          insertedAs[i] = earlier;
+          result.skipped();
+          continue;
+        }
+      }
+      insertedAs[i] = missing.size();
+      if (batch.hasIds()) {
+        missing.setId(missing.size(), batch.getId(i));
+      }
+      missing.add(batch.getFirstName(i), batch.getLastName(i));
+      result.inserted();
+    }
+
+    CustomerBatchSetter.batchUpdateReturningKeys(jdbcTemplate, missing, batchSize);
+    long[] ids = new long[batch.size()];
+    for (int i = 0; i < batch.size(); i++) {
+      ids[i] = insertedAs[i] >= 0
+          ? missing.getId(insertedAs[i])
+          : existing.get(Arrays.asList(batch.getFirstName(i), batch.getLastName(i)));
+      batch.setId(i, ids[i]);
+    }
+
+    NameKeySet known = keySet;
+    if (known != null) {
+      addAfterCommit(known, batchNames);
+    }
+    record(result);
+    log.info(String.format("upsertReturningKeys(): %s", result));
+
+    return ids;
+  }
+
+  /**
+   * The rows of the batch that need a statement: all but the duplicates of a known name or of an earlier row. Adds the
+   * names of the batch to {@code batchNames}.
+   */
+  private static CustomerBatch pending(
+      CustomerBatch batch, NameKeySet known, Set<List<String>> batchNames, UpsertResult result) {
+    CustomerBatch pending = new CustomerBatch(batch.size());
+    for (int i = 0; i < batch.size(); i++) {
+      String firstName = batch.getFirstName(i);
+      String lastName = batch.getLastName(i);
+      if (firstName != null && lastName != null) {
+        boolean repeated = !batchNames.add(Arrays.asList(firstName, lastName));
+        if (repeated || known != null && known.contains(firstName, lastName)) {
+          result.skipped();
+          continue;
+        }
+      }
+      if (batch.hasIds()) {
+        pending.setId(pending.size(), batch.getId(i));
+      }
+      pending.add(firstName, lastName);
+    }
+    return pending;
+  }
+
+  private int[][] batchUpdate(JdbcTemplate jdbcTemplate, CustomerBatch pending, int batchSize) {
+    if (pending.size() == 0) {
+      return new int[0][];
+    }
+    boolean useMerge = useMerge(jdbcTemplate);
+    BatchPreparedStatementSetter setter = setter(pending, useMerge);
+    return jdbcTemplate.execute(sql(useMerge, pending.hasIds()),
+        (PreparedStatementCallback<int[][]>) ps -> CustomerBatchSetter.executeBatches(ps, setter, batchSize));
+  }
+
+  private boolean useMerge(JdbcTemplate jdbcTemplate) {
+    if (merge == null) {
+      merge = jdbcTemplate.execute(
+          (ConnectionCallback<Boolean>) con -> con.getMetaData().getDatabaseProductName().startsWith("DB2"));
+    }
+    return merge;
+  }
+
+  private static String sql(boolean useMerge, boolean withIds) {
+    return useMerge
+        ? (withIds ? MERGE_WITH_ID_SQL : MERGE_SQL)
+        : (withIds ? INSERT_MISSING_WITH_ID_SQL : INSERT_MISSING_SQL);
+  }
+
+  /**
+   * Binds the row of {@code pending} with the given index.
+   */
+  private static BatchPreparedStatementSetter setter(CustomerBatch pending, boolean useMerge) {
+    boolean withIds = pending.hasIds();
+    return new BatchPreparedStatementSetter() {
+      @Override
+      public void setValues(PreparedStatement ps, int row) throws SQLException {
+        int p = 1;
+        if (withIds) {
+          ps.setLong(p++, pending.getId(row));
+        }
+        ps.setString(p++, pending.getFirstName(row));
+        ps.setString(p++, pending.getLastName(row));
+        if (!useMerge) {
+          // the names again, for the "not exists" lookup
+          ps.setString(p++, pending.getFirstName(row));
+          ps.setString(p++, pending.getLastName(row));
+        }
+      }
+
+      @Override
+      public int getBatchSize() {
+        return pending.size();
+      }
+    };
+  }
+
+  private void record(UpsertResult result) {
+    rowsInserted.add(result.getRowsInserted());
+    rowsMatched.add(result.getRowsMatched());
+    rowsSkipped.add(result.getRowsSkipped());
+  }
+
+  /**
+   * Adds the names of the batch to the set once they are committed, or at once without a transaction; a rolled back
+   * batch must not hide its names from the next upsert.
+   */
+  private static void addAfterCommit(NameKeySet known, Set<List<String>> names) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      names.forEach(name -> known.add(name.get(0), name.get(1)));
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        names.forEach(name -> known.add(name.get(0), name.get(1)));
+      }
+    });
+  }
+
+  /**
+   * The names in the table, read on first use.
+   */
+  private NameKeySet keySet(JdbcTemplate jdbcTemplate) {
+    NameKeySet known = keySet;
+    if (known != null) {
+      return known;
+    }
+    synchronized (this) {
+      if (keySet == null) {
+        long start = System.nanoTime();
+        NameKeySet loaded = new NameKeySet();
+        jdbcTemplate.query(
+            con -> {
+              PreparedStatement ps = con.prepareStatement(SELECT_NAMES);
+              ps.setFetchSize(fetchSize);
+              return ps;
+            },
+            rs -> {
+              String firstName = rs.getString(1);
+              String lastName = rs.getString(2);
+              if (firstName != null && lastName != null) {
+                loaded.add(firstName, lastName);
+              }
+            });
+        log.info(String.format("keySet(): %s names, %s KB, %s ms",
+            loaded.size(), loaded.bytes() / 1024, (System.nanoTime() - start) / 1000000));
+        keySet = loaded;
+      }
+      return keySet;
+    }
+  }
+
+  /**
+   * Drops the names read so far; the next upsert reads them from the table again.
+   */
+  public synchronized void reset() {
+    keySet = null;
+  }
+
+  @Override
+  public String toString() {
+    NameKeySet known = keySet;
+    return String.format("CustomerUpsert [useKeySet=%s, knownNames=%s, rowsInserted=%s, rowsMatched=%s, "
+        + "rowsSkipped=%s]", useKeySet, known == null ? 0 : known.size(), rowsInserted.sum(), rowsMatched.sum(),
+        rowsSkipped.sum());
+  }
+
+}
@@ -0,0 +1,92 @@
+package hello;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logging of the rows on the data path (source rows, working rows, update counts), which is too expensive to do per
+ * row on large loads. The mode is set by customer.log.data-mode:
+ * <ul>
+ * <li>ALL - every row, as before</li>
+ * <li>SAMPLED - every customer.log.sample-rate-th row, counted across all callers</li>
+ * <li>SUMMARY - one line per call with the row count</li>
+ * <li>OFF - nothing</li>
+ * </ul>
+ * Messages are parameterized, so nothing is formatted unless INFO is enabled for the caller's logger.
+ */
+@Component
+public class DataLogger {
+
+  public enum Mode {
+    ALL, SAMPLED, SUMMARY, OFF
+  }
+
+  private final Mode mode;
+
+  private final int sampleRate;
+
+  private final AtomicLong rowCounter = new AtomicLong();
+
+  public DataLogger(
+      @Value("${customer.log.data-mode:SUMMARY}") Mode mode,
+      @Value("${customer.log.sample-rate:1000}") int sampleRate) {
+    super();
+    if (sampleRate < 1) {
+      throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+    }
+    this.mode = mode;
+    this.sampleRate = sampleRate;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void rows(Logger log, String label, List<Object[]> rows) {
+    if (mode == Mode.OFF || !log.isInfoEnabled()) {
+      return;
+    }
+
+    switch (mode) {
+    case ALL:
+      for (Object[] row : rows) {
+        log.info("{}: {}, {}", label, row[0], row[1]);
+      }
+      break;
+    case SAMPLED:
+      // one atomic update per call; log the rows whose running number is a multiple of sampleRate
+      long start = rowCounter.getAndAdd(rows.size());
+      for (int i = (int) ((sampleRate - start % sampleRate) % sampleRate); i < rows.size(); i += sampleRate) {
+        Object[] row = rows.get(i);
+        log.info("{} (row {}): {}, {}", label, start + i, row[0], row[1]);
+      }
+      break;
+    default:
+      log.info("{}: {} rows", label, rows.size());
+    }
+  }
+
+  public void updateCounts(Logger log, int[][] updateCounts) {
+    if (mode == Mode.OFF || !log.isInfoEnabled()) {
+      return;
+    }
+
+    if (mode == Mode.ALL) {
+      log.info("Update counts: {}", (Object) updateCounts);
+      return;
+    }
+
+    int rows = 0;
+    for (int[] batch : updateCounts) {
+      for (int count : batch) {
+        // a multi-row statement reports all its rows, drivers may report SUCCESS_NO_INFO (-2) per statement
+        rows += count >= 0 ? count : 1;
+      }
+    }
+    log.info("Update counts: {} batches, {} rows", updateCounts.length, rows);
+  }
+
+}
@@ -0,0 +1,37 @@
+package hello;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DataSourceConfig {
+
+  @Bean
+  public PoolMetrics poolMetrics() {
+    return new PoolMetrics();
+  }
+
+  /**
+   * Sizes the pool to pool-01, so that every loader thread gets a connection without waiting. Any
+   * spring.datasource.hikari.* property is bound afterwards and overrides these defaults.
+   */
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource dataSource(
+      DataSourceProperties properties, PoolMetrics poolMetrics,
+      @Value("${customer.executor.pool-size:4}") int executorPoolSize) {
+    HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+
+    // one connection per pool-01 thread, plus one for the calling thread (createTable, findByFirstName)
+    dataSource.setMaximumPoolSize(executorPoolSize + 1);
+    dataSource.setMinimumIdle(executorPoolSize + 1);
+    dataSource.setMetricsTrackerFactory(poolMetrics);
+
+    return dataSource;
+  }
+
+}
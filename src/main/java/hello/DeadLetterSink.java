@@ -0,0 +1,11 @@
+package hello;
+
+/**
+ * Receives the rows that {@link ResilientInserter} gave up on, either because the database rejects them (e.g. a
+ * value too long) or because they still failed after the last retry.
+ */
+public interface DeadLetterSink {
+
+  void accept(int chunkNo, String firstName, String lastName, Throwable cause);
+
+}
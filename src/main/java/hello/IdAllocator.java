@@ -0,0 +1,109 @@
+package hello;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Source of customer IDs, set by customer.id.strategy:
+ * <ul>
+ * <li>IDENTITY - the ID column is an identity generated by the database, which pre-allocates
+ * customer.id.cache-size values at a time instead of updating the catalog on every insert</li>
+ * <li>HILO - the ID column is a plain BIGINT and IDs are assigned by this allocator before the insert. Each
+ * "next value" of the common.customers_id_seq sequence reserves a block of customer.id.block-size IDs, which are then
+ * handed out without a round-trip. Blocks never overlap, so the allocator is safe across the threads of pool-01 and
+ * across nodes, provided all nodes use the same block size.</li>
+ * </ul>
+ * With HILO the IDs of an insert are known before it runs, so they are returned to the caller for free.
+ */
+@Component
+public class IdAllocator {
+
+  public enum Strategy {
+    IDENTITY, HILO
+  }
+
+  static final String NEXT_BLOCK = "values next value for common.customers_id_seq";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final Strategy strategy;
+
+  private final int blockSize;
+
+  private final int cacheSize;
+
+  // current block [next, limit), guarded by this
+  private long next;
+
+  private long limit;
+
+  public IdAllocator(
+      JdbcTemplate jdbcTemplate,
+      @Value("${customer.id.strategy:IDENTITY}") Strategy strategy,
+      @Value("${customer.id.block-size:1000}") int blockSize,
+      @Value("${customer.id.cache-size:100}") int cacheSize) {
+    super();
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+    }
+    if (cacheSize < 2) {
+      throw new IllegalArgumentException("cacheSize must be at least 2: " + cacheSize);
+    }
+    this.jdbcTemplate = jdbcTemplate;
+    this.strategy = strategy;
+    this.blockSize = blockSize;
+    this.cacheSize = cacheSize;
+  }
+
+  public Strategy getStrategy() {
+    return strategy;
+  }
+
+  public boolean isClientAssigned() {
+    return strategy == Strategy.HILO;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public int getCacheSize() {
+    return cacheSize;
+  }
+
+  /**
+   * Assigns IDs to the rows of the batch if IDs are client assigned and the batch has none yet (a batch that is
+   * retried keeps its IDs).
+   */
+  public void assign(CustomerBatch batch) {
+    if (!isClientAssigned() || batch.hasIds()) {
+      return;
+    }
+
+    synchronized (this) {
+      for (int i = 0; i < batch.size(); i++) {
+        if (next == limit) {
+          // one round-trip per blockSize IDs; the threads waiting meanwhile would need a block too
+          next = jdbcTemplate.queryForObject(NEXT_BLOCK, Long.class);
+          limit = next + blockSize;
+        }
+        batch.setId(i, next++);
+      }
+    }
+  }
+
+  /**
+   * Drops the current block, to be called when the sequence is recreated.
+   */
+  public synchronized void reset() {
+    next = 0;
+    limit = 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("IdAllocator [strategy=%s, blockSize=%s, cacheSize=%s]", strategy, blockSize, cacheSize);
+  }
+
+}
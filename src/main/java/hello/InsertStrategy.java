@@ -0,0 +1,17 @@
+package hello;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * A way of writing a {@link CustomerBatch} to common.customers, see {@link CustomerInserter}. Implementations run in
+ * the caller's transaction.
+ */
+public interface InsertStrategy {
+
+  /**
+   * @param batchSize rows per round-trip
+   * @return update counts, one array per round-trip
+   */
+  int[][] insert(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize);
+
+}
@@ -0,0 +1,96 @@
+package hello;
+
+/**
+ * How far one partition of a {@link BulkLoadJob} got: the partition is the byte range [startOffset, endOffset) of
+ * the input file, and the lines before nextOffset are committed. Stored in common.load_checkpoint.
+ */
+public class LoadCheckpoint {
+
+  public enum Status {
+    // rows are being committed
+    LOADING,
+    // all rows are committed, to the stage table if the job is staged
+    LOADED,
+    // staged rows are moved to common.customers
+    PUBLISHED
+  }
+
+  private final String jobId;
+  private final int partitionNo;
+  // stage table load ID, 0 if the rows go straight to common.customers
+  private final long loadId;
+  private final long startOffset;
+  private final long endOffset;
+  private final long nextOffset;
+  private final long rowsLoaded;
+  private final Status status;
+
+  LoadCheckpoint(String jobId, int partitionNo, long loadId, long startOffset, long endOffset, long nextOffset,
+      long rowsLoaded, Status status) {
+    super();
+    this.jobId = jobId;
+    this.partitionNo = partitionNo;
+    this.loadId = loadId;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.nextOffset = nextOffset;
+    this.rowsLoaded = rowsLoaded;
+    this.status = status;
+  }
+
+  static LoadCheckpoint start(String jobId, int partitionNo, long loadId, long startOffset, long endOffset) {
+    return new LoadCheckpoint(jobId, partitionNo, loadId, startOffset, endOffset, startOffset, 0, Status.LOADING);
+  }
+
+  /**
+   * @param loaded true if nextOffset is the end of the partition
+   */
+  LoadCheckpoint advance(long nextOffset, int rows, boolean loaded) {
+    return new LoadCheckpoint(jobId, partitionNo, loadId, startOffset, endOffset, nextOffset, rowsLoaded + rows,
+        loaded ? Status.LOADED : Status.LOADING);
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public int getPartitionNo() {
+    return partitionNo;
+  }
+
+  public long getLoadId() {
+    return loadId;
+  }
+
+  public boolean isStaged() {
+    return loadId != 0;
+  }
+
+  public long getStartOffset() {
+    return startOffset;
+  }
+
+  public long getEndOffset() {
+    return endOffset;
+  }
+
+  public long getNextOffset() {
+    return nextOffset;
+  }
+
+  public long getRowsLoaded() {
+    return rowsLoaded;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "LoadCheckpoint [jobId=%s, partitionNo=%s, range=[%s, %s), nextOffset=%s, rowsLoaded=%s, status=%s]",
+        jobId, partitionNo, startOffset, endOffset, nextOffset, rowsLoaded, status);
+  }
+
+}
@@ -0,0 +1,76 @@
+package hello;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Access to common.load_checkpoint, in the caller's transaction.
+ */
+final class LoadCheckpoints {
+
+  static final String SELECT_JOB =
+      "select JOB_ID, PARTITION_NO, LOAD_ID, START_OFFSET, END_OFFSET, NEXT_OFFSET, ROWS_LOADED, STATUS "
+      + "from common.load_checkpoint where JOB_ID = ? order by PARTITION_NO";
+
+  static final String INSERT =
+      "insert into common.load_checkpoint(JOB_ID, PARTITION_NO, LOAD_ID, START_OFFSET, END_OFFSET, NEXT_OFFSET, "
+      + "ROWS_LOADED, STATUS, UPDATED_ON) values ";
+
+  // only from the expected offset, so that two runs of a job never commit the same rows
+  static final String ADVANCE =
+      "update common.load_checkpoint set NEXT_OFFSET = ?, ROWS_LOADED = ?, STATUS = ?, UPDATED_ON = ? "
+      + "where JOB_ID = ? and PARTITION_NO = ? and NEXT_OFFSET = ? and STATUS = 'LOADING'";
+
+  static final String PUBLISH =
+      "update common.load_checkpoint set STATUS = 'PUBLISHED', UPDATED_ON = ? where JOB_ID = ? and STATUS = 'LOADED'";
+
+  static final RowMapper<LoadCheckpoint> ROW_MAPPER = (rs, rowNo) -> new LoadCheckpoint(
+      rs.getString(1), rs.getInt(2), rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getLong(6), rs.getLong(7),
+      LoadCheckpoint.Status.valueOf(rs.getString(8)));
+
+  private LoadCheckpoints() {
+  }
+
+  static List<LoadCheckpoint> find(JdbcTemplate jdbcTemplate, String jobId) {
+    return jdbcTemplate.query(SELECT_JOB, new Object[] { jobId }, ROW_MAPPER);
+  }
+
+  /**
+   * Inserts the checkpoints of a new job with one statement, so a job has all its partitions or none.
+   *
+   * @throws org.springframework.dao.DuplicateKeyException if the job exists
+   */
+  static void insert(JdbcTemplate jdbcTemplate, List<LoadCheckpoint> checkpoints) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    StringBuilder sql = new StringBuilder(INSERT);
+    List<Object> args = new ArrayList<Object>(checkpoints.size() * 9);
+    for (LoadCheckpoint c : checkpoints) {
+      sql.append(args.isEmpty() ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?)");
+      Collections.addAll(args, c.getJobId(), c.getPartitionNo(), c.getLoadId(), c.getStartOffset(),
+          c.getEndOffset(), c.getNextOffset(), c.getRowsLoaded(), c.getStatus().name(), now);
+    }
+    jdbcTemplate.update(sql.toString(), args.toArray());
+  }
+
+  /**
+   * @throws OptimisticLockingFailureException if the partition is no longer at {@code from}, i.e. another run of the
+   *         job has committed rows of it
+   */
+  static void advance(JdbcTemplate jdbcTemplate, LoadCheckpoint from, LoadCheckpoint to) {
+    int updated = jdbcTemplate.update(ADVANCE, to.getNextOffset(), to.getRowsLoaded(), to.getStatus().name(),
+        new Timestamp(System.currentTimeMillis()), to.getJobId(), to.getPartitionNo(), from.getNextOffset());
+    if (updated != 1) {
+      throw new OptimisticLockingFailureException(String.format("Checkpoint moved by another run: %s", from));
+    }
+  }
+
+  static int publish(JdbcTemplate jdbcTemplate, String jobId) {
+    return jdbcTemplate.update(PUBLISH, new Timestamp(System.currentTimeMillis()), jobId);
+  }
+
+}
@@ -0,0 +1,89 @@
+package hello;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Loads a list of customers with one of the execution strategies over the {@link CustomerRepository} core, selected
+ * by customer.load.execution or per call:
+ * <ul>
+ * <li>SYNCHRONOUS - one transaction on the calling thread, through {@link CustomerService}</li>
+ * <li>PARTITIONED - chunks of about batch-size rows, a transaction each, submitted to pool-01 by
+ * {@link ConcurrentCustomerService}</li>
+ * <li>ASYNC - the same chunks as @Async calls of {@link AsyncCustomerService}, composed with CompletableFuture</li>
+ * </ul>
+ * All three return a {@link BulkLoadResult}; a failed chunk is reported in it rather than thrown.
+ */
+@Component
+public class LoadExecution {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadExecution.class);
+
+  public enum Mode {
+    SYNCHRONOUS, PARTITIONED, ASYNC
+  }
+
+  private final Mode defaultMode;
+
+  private final CustomerService custService;
+
+  private final ConcurrentCustomerService conCustService;
+
+  private final AsyncCustomerService asyncCustService;
+
+  private final ThreadPoolTaskExecutor taskExecutor;
+
+  public LoadExecution(
+      @Value("${customer.load.execution:PARTITIONED}") Mode defaultMode,
+      CustomerService custService,
+      ConcurrentCustomerService conCustService,
+      AsyncCustomerService asyncCustService,
+      @Qualifier("pool-01") ThreadPoolTaskExecutor taskExecutor) {
+    super();
+    this.defaultMode = defaultMode;
+    this.custService = custService;
+    this.conCustService = conCustService;
+    this.asyncCustService = asyncCustService;
+    this.taskExecutor = taskExecutor;
+  }
+
+  public Mode getDefaultMode() {
+    return defaultMode;
+  }
+
+  public BulkLoadResult load(List<Object[]> splitNames)
+  throws Exception {
+    return load(splitNames, defaultMode);
+  }
+
+  public BulkLoadResult load(List<Object[]> splitNames, Mode mode)
+  throws Exception {
+    switch (mode) {
+    case PARTITIONED:
+      return ConcurrentCustomerService.insertDataConcurrently(splitNames, conCustService, taskExecutor);
+    case ASYNC:
+      return AsyncCustomerService.insertDataAsync(splitNames, asyncCustService, taskExecutor);
+    default:
+      BulkLoadResult result = new BulkLoadResult();
+      try {
+        custService.insertData(splitNames);
+        result.add(ChunkResult.succeeded(0, splitNames.size()));
+      } catch (Exception e) {
+        log.error("load(): Exception", e);
+        result.add(ChunkResult.failed(0, splitNames.size(), e));
+      }
+      return result;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LoadExecution [defaultMode=%s]", defaultMode);
+  }
+
+}
@@ -0,0 +1,192 @@
+package hello;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs groups of tasks (chunk inserts, lookups) as one unit, on the threads selected by customer.executor.mode:
+ * <ul>
+ * <li>POOL - the threads of pool-01</li>
+ * <li>VIRTUAL - one virtual thread per task (Java 21+). JDBC calls park the virtual thread instead of holding a
+ * platform thread. On older runtimes this falls back to POOL.</li>
+ * </ul>
+ * In both modes at most customer.executor.max-concurrency tasks run at a time; by default that is the size of the
+ * connection pool less the connection of the calling thread, so tasks wait on a permit rather than in Hikari.
+ * <p>
+ * {@link #invokeAll(List)} is a fan-out/fan-in in the spirit of structured concurrency: it returns when all tasks have
+ * finished, or, when one fails, cancels (interrupts) the others, waits until they have stopped and rethrows.
+ */
+@Component
+public class LoaderExecutor {
+
+  private static final Logger log = LoggerFactory.getLogger(LoaderExecutor.class);
+
+  public enum Mode {
+    POOL, VIRTUAL
+  }
+
+  private final Mode mode;
+
+  private final Executor executor;
+
+  // owned (and shut down) here, VIRTUAL mode only
+  private final ExecutorService virtualExecutor;
+
+  private final Semaphore permits;
+
+  private final int maxConcurrency;
+
+  public LoaderExecutor(
+      @Value("${customer.executor.mode:POOL}") Mode mode,
+      @Value("${customer.executor.max-concurrency:0}") int maxConcurrency,
+      @Qualifier("pool-01") ThreadPoolTaskExecutor taskExecutor,
+      DataSource dataSource) {
+    super();
+    ExecutorService virtualExecutor = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+    if (mode == Mode.VIRTUAL && virtualExecutor == null) {
+      log.warn(String.format("Virtual threads need Java 21+, running on %s. Falling back to pool-01.",
+          System.getProperty("java.version")));
+    }
+
+    this.mode = virtualExecutor != null ? Mode.VIRTUAL : Mode.POOL;
+    // through pool-01 itself rather than its ThreadPoolExecutor, so that its backpressure applies in either scheduler
+    this.executor = virtualExecutor != null ? virtualExecutor : taskExecutor;
+    this.virtualExecutor = virtualExecutor;
+    this.maxConcurrency = maxConcurrency > 0 ? maxConcurrency : defaultConcurrency(dataSource, taskExecutor);
+    this.permits = new Semaphore(this.maxConcurrency);
+
+    log.info(toString());
+  }
+
+  private static int defaultConcurrency(DataSource dataSource, ThreadPoolTaskExecutor taskExecutor) {
+    if (dataSource instanceof HikariDataSource) {
+      return Math.max(((HikariDataSource) dataSource).getMaximumPoolSize() - 1, 1);
+    }
+    return Math.max(taskExecutor.getMaxPoolSize(), 1);
+  }
+
+  /**
+   * Executors.newVirtualThreadPerTaskExecutor() if the runtime has it. Looked up reflectively, the build targets
+   * Java 8.
+   */
+  static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  /**
+   * Runs all tasks and returns their results in task order.
+   *
+   * @throws ExecutionException with the cause of the first task that failed, after the other tasks were cancelled
+   *         and have stopped
+   */
+  public <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+  throws InterruptedException, ExecutionException {
+    BlockingQueue<Future<T>> completed = new LinkedBlockingQueue<Future<T>>();
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    // one permit per task that has left run(), or was cancelled before it started: a task the executor drops at
+    // shutdown never runs
+    Semaphore stopped = new Semaphore(0);
+
+    try {
+      for (Callable<T> task : tasks) {
+        FutureTask<T> future = new FutureTask<T>(() -> {
+          permits.acquire();
+          try {
+            return task.call();
+          } finally {
+            permits.release();
+          }
+        }) {
+          // taken by whichever comes first, run() or done() on a cancel before the start; it releases "stopped"
+          private final AtomicBoolean claimed = new AtomicBoolean();
+
+          @Override
+          public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+              return;
+            }
+            try {
+              super.run();
+            } finally {
+              stopped.release();
+            }
+          }
+
+          @Override
+          protected void done() {
+            if (claimed.compareAndSet(false, true)) {
+              stopped.release();
+            }
+            completed.add(this);
+          }
+        };
+        executor.execute(future);
+        futures.add(future);
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        completed.take().get();
+      }
+    } catch (ExecutionException | InterruptedException | RuntimeException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      // do not return while a cancelled task may still hold a connection
+      stopped.acquireUninterruptibly(futures.size());
+      throw e;
+    }
+
+    List<T> results = new ArrayList<T>(futures.size());
+    for (Future<T> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (virtualExecutor != null) {
+      virtualExecutor.shutdown();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LoaderExecutor [mode=%s, maxConcurrency=%s]", mode, maxConcurrency);
+  }
+
+}
@@ -0,0 +1,234 @@
+package hello;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Micrometer meters of the insert and query paths, tagged with the service that recorded them.
+ * <p>
+ * Meters go to the application's {@link MeterRegistry} bean if there is exactly one (e.g. a Prometheus or JMX
+ * registry), otherwise to an in-memory {@link SimpleMeterRegistry}. Totals that only grow (cache hits, connection
+ * timeouts, completed tasks) are function counters, so that the registry reports their rate.
+ * <p>
+ * The pool-01 and cache meters are registered by {@link Binder} when those beans are created, so that with
+ * customer.startup.lazy-init=true the metrics do not create them.
+ */
+@Component
+public class LoaderMetrics {
+
+  private final MeterRegistry registry;
+
+  private final Map<String, ServiceMeters> serviceMeters = new ConcurrentHashMap<String, ServiceMeters>();
+
+  private class ServiceMeters {
+    final Timer insert;
+    final DistributionSummary insertRows;
+    final Counter rowsInserted;
+    final Counter rowsFailed;
+    final Counter rowsRetried;
+    final Counter rowsDeadLettered;
+    final Timer query;
+    final Counter rowsRead;
+    final Timer createTable;
+
+    ServiceMeters(String service) {
+      insert = Timer.builder("customers.insert")
+          .description("Latency of one insertData() call")
+          .tag("service", service)
+          .publishPercentiles(0.5, 0.99)
+          .register(registry);
+      insertRows = DistributionSummary.builder("customers.insert.batch.size")
+          .description("Rows per insertData() call")
+          .tag("service", service)
+          .register(registry);
+      rowsInserted = Counter.builder("customers.insert.rows")
+          .tag("service", service)
+          .register(registry);
+      rowsFailed = Counter.builder("customers.insert.rows.failed")
+          .tag("service", service)
+          .register(registry);
+      rowsRetried = Counter.builder("customers.insert.rows.retried")
+          .tag("service", service)
+          .register(registry);
+      rowsDeadLettered = Counter.builder("customers.insert.rows.dead-lettered")
+          .tag("service", service)
+          .register(registry);
+      query = Timer.builder("customers.query")
+          .description("Latency of findByFirstName()")
+          .tag("service", service)
+          .publishPercentiles(0.5, 0.99)
+          .register(registry);
+      rowsRead = Counter.builder("customers.query.rows")
+          .tag("service", service)
+          .register(registry);
+      createTable = Timer.builder("customers.ddl")
+          .tag("service", service)
+          .register(registry);
+    }
+  }
+
+  /**
+   * Binds pool-01 and the {@link CustomerCache} to the meters once they are initialized.
+   */
+  @Component
+  static class Binder implements BeanPostProcessor {
+
+    private final ObjectProvider<LoaderMetrics> loaderMetrics;
+
+    Binder(ObjectProvider<LoaderMetrics> loaderMetrics) {
+      super();
+      this.loaderMetrics = loaderMetrics;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName)
+        throws BeansException {
+      if (bean instanceof ThreadPoolTaskExecutor && beanName.equals("pool-01")) {
+        loaderMetrics.ifAvailable(metrics -> metrics.bindExecutor((ThreadPoolTaskExecutor) bean));
+      } else if (bean instanceof CustomerCache) {
+        loaderMetrics.ifAvailable(metrics -> metrics.bindCache((CustomerCache) bean));
+      }
+      return bean;
+    }
+  }
+
+  public LoaderMetrics(
+      ObjectProvider<MeterRegistry> registry,
+      ObjectProvider<PoolMetrics> poolMetrics) {
+    super();
+    this.registry = registry.getIfUnique(SimpleMeterRegistry::new);
+
+    poolMetrics.ifAvailable(this::bindPool);
+  }
+
+  private void bindExecutor(ThreadPoolTaskExecutor taskExecutor) {
+    Gauge.builder("executor.active", taskExecutor, ThreadPoolTaskExecutor::getActiveCount)
+        .tag("name", "pool-01")
+        .register(registry);
+    if (taskExecutor instanceof LoaderScheduler) {
+      bindScheduler((LoaderScheduler) taskExecutor);
+      return;
+    }
+    Gauge.builder("executor.queued", taskExecutor, e -> e.getThreadPoolExecutor().getQueue().size())
+        .tag("name", "pool-01")
+        .register(registry);
+    FunctionCounter.builder("executor.completed", taskExecutor, e -> e.getThreadPoolExecutor().getCompletedTaskCount())
+        .tag("name", "pool-01")
+        .register(registry);
+  }
+
+  private void bindScheduler(LoaderScheduler scheduler) {
+    Gauge.builder("executor.queued", scheduler, LoaderScheduler::getQueueDepth)
+        .tag("name", "pool-01")
+        .register(registry);
+    FunctionCounter.builder("executor.completed", scheduler, LoaderScheduler::getCompletedTaskCount)
+        .tag("name", "pool-01")
+        .register(registry);
+    FunctionCounter.builder("executor.rejections", scheduler, LoaderScheduler::getRejections)
+        .tag("name", "pool-01")
+        .register(registry);
+    FunctionCounter.builder("executor.caller.runs", scheduler, LoaderScheduler::getCallerRuns)
+        .tag("name", "pool-01")
+        .register(registry);
+    FunctionCounter.builder("executor.aborted", scheduler, LoaderScheduler::getAborted)
+        .tag("name", "pool-01")
+        .register(registry);
+  }
+
+  private void bindPool(PoolMetrics poolMetrics) {
+    Gauge.builder("jdbc.connections.active", poolMetrics, PoolMetrics::getActiveConnections).register(registry);
+    Gauge.builder("jdbc.connections.idle", poolMetrics, PoolMetrics::getIdleConnections).register(registry);
+    Gauge.builder("jdbc.connections.pending", poolMetrics, PoolMetrics::getPendingThreads).register(registry);
+    FunctionCounter.builder("jdbc.connections.timeouts", poolMetrics, PoolMetrics::getTimeouts).register(registry);
+  }
+
+  private void bindCache(CustomerCache customerCache) {
+    Gauge.builder("customers.cache.size", customerCache, CustomerCache::size).register(registry);
+    FunctionCounter.builder("customers.cache.hits", customerCache, CustomerCache::getHits).register(registry);
+    FunctionCounter.builder("customers.cache.misses", customerCache, CustomerCache::getMisses).register(registry);
+    FunctionCounter.builder("customers.cache.evictions", customerCache, CustomerCache::getEvictions)
+        .register(registry);
+  }
+
+  private ServiceMeters meters(String service) {
+    return serviceMeters.computeIfAbsent(service, ServiceMeters::new);
+  }
+
+  public MeterRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Records an insert call. Its rows are counted as inserted once the caller's transaction commits, or at once
+   * without a transaction; a rollback counts them as failed.
+   */
+  public void recordInsert(String service, int rows, long elapsedNanos) {
+    ServiceMeters meters = meters(service);
+    meters.insert.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    meters.insertRows.record(rows);
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      meters.rowsInserted.increment(rows);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCompletion(int status) {
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+          meters.rowsInserted.increment(rows);
+        } else {
+          meters.rowsFailed.increment(rows);
+        }
+      }
+    });
+  }
+
+  public void recordInsertFailure(String service, int rows, long elapsedNanos) {
+    ServiceMeters meters = meters(service);
+    meters.insert.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    meters.insertRows.record(rows);
+    meters.rowsFailed.increment(rows);
+  }
+
+  public void recordRecovery(String service, int rowsRetried, int rowsDeadLettered) {
+    ServiceMeters meters = meters(service);
+    meters.rowsRetried.increment(rowsRetried);
+    meters.rowsDeadLettered.increment(rowsDeadLettered);
+  }
+
+  public void recordQuery(String service, long rows, long elapsedNanos) {
+    ServiceMeters meters = meters(service);
+    meters.query.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    meters.rowsRead.increment(rows);
+  }
+
+  public void recordCreateTable(String service, long elapsedNanos) {
+    meters(service).createTable.record(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("LoaderMetrics [");
+    serviceMeters.forEach((service, meters) -> sb.append(String.format(
+        "%s: inserted=%.0f, failed=%.0f, insertCalls=%s, insertMeanMs=%.3f, queries=%s; ",
+        service, meters.rowsInserted.count(), meters.rowsFailed.count(), meters.insert.count(),
+        meters.insert.mean(TimeUnit.MILLISECONDS), meters.query.count())));
+    return sb.append("]").toString();
+  }
+
+}
@@ -0,0 +1,434 @@
+package hello;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
+
+/**
+ * pool-01, the executor of the loaders, with a bounded queue of customer.executor.queue-capacity tasks. What happens to
+ * a task submitted while the queue is full is set by customer.executor.backpressure:
+ * <ul>
+ * <li>CALLER_RUNS - the submitting thread runs it, which holds the producer back to the pace of the pool</li>
+ * <li>BLOCK - the submitting thread waits up to customer.executor.offer-timeout-ms for room, then the task is
+ * rejected. A thread of the pool runs the task itself instead: waiting for room in its own pool could deadlock.</li>
+ * <li>ABORT - the task is rejected</li>
+ * </ul>
+ * A rejected task throws a TaskRejectedException to the submitter, which the loaders report as a failed chunk.
+ * <p>
+ * customer.executor.scheduler=WORK_STEALING runs the tasks on a ForkJoinPool instead of a ThreadPoolExecutor: every
+ * thread has its own deque and idle threads steal from busy ones, so chunks of uneven sizes spread over the threads
+ * without contention on one shared queue. The bound and the backpressure are the same;
+ * {@link #getThreadPoolExecutor()} is not available in this mode.
+ * <p>
+ * {@link #shutdown()} stops taking tasks and waits up to customer.executor.drain-timeout-seconds for the queued and
+ * running ones to finish. Tasks still queued after that are cancelled, running ones are interrupted.
+ */
+public class LoaderScheduler extends ThreadPoolTaskExecutor {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger log = LoggerFactory.getLogger(LoaderScheduler.class);
+
+  public enum Mode {
+    THREAD_POOL, WORK_STEALING
+  }
+
+  public enum Backpressure {
+    CALLER_RUNS, BLOCK, ABORT
+  }
+
+  private interface Room {
+    // queues the task if there is room within the timeout
+    boolean offer(long timeoutMillis) throws InterruptedException;
+  }
+
+  private final Mode mode;
+
+  private final Backpressure backpressure;
+
+  private final long offerTimeoutMillis;
+
+  private int queueCapacity = Integer.MAX_VALUE;
+
+  private int drainTimeoutSeconds;
+
+  private ExecutorService executorService;
+
+  // WORK_STEALING only
+  private ForkJoinPool forkJoinPool;
+
+  // WORK_STEALING only: one permit per task the pool has room for, running or queued
+  private Semaphore room;
+
+  // marks the threads of the THREAD_POOL mode
+  private final ThreadLocal<Boolean> poolThread = new ThreadLocal<Boolean>();
+
+  // set by submitQueued(): the offer timeout of the task the thread submits, which is never run inline
+  private final ThreadLocal<Long> queuedOnly = new ThreadLocal<Long>();
+
+  private final LongAdder rejections = new LongAdder();
+
+  private final LongAdder callerRuns = new LongAdder();
+
+  private final LongAdder aborted = new LongAdder();
+
+  private final LongAdder completed = new LongAdder();
+
+  public LoaderScheduler(Mode mode, Backpressure backpressure, long offerTimeoutMillis) {
+    super();
+    this.mode = mode;
+    this.backpressure = backpressure;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+  }
+
+  /**
+   * A task of the work-stealing pool. Gives its room back when it is done, and cancels the task when the pool drops
+   * it at shutdown.
+   */
+  private final class Slot extends ForkJoinTask<Void> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Runnable task;
+
+    Slot(Runnable task) {
+      this.task = task;
+    }
+
+    @Override
+    public Void getRawResult() {
+      return null;
+    }
+
+    @Override
+    protected void setRawResult(Void value) {
+    }
+
+    @Override
+    protected boolean exec() {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        log.error("execute(): task failed", e);
+      } finally {
+        completed.increment();
+        room.release();
+      }
+      return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        cancelRemainingTask(task);
+        room.release();
+      }
+      return cancelled;
+    }
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public Backpressure getBackpressure() {
+    return backpressure;
+  }
+
+  public long getOfferTimeoutMillis() {
+    return offerTimeoutMillis;
+  }
+
+  @Override
+  public void setQueueCapacity(int queueCapacity) {
+    super.setQueueCapacity(queueCapacity);
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * The drain timeout of {@link #shutdown()}.
+   */
+  @Override
+  public void setAwaitTerminationSeconds(int awaitTerminationSeconds) {
+    super.setAwaitTerminationSeconds(awaitTerminationSeconds);
+    this.drainTimeoutSeconds = awaitTerminationSeconds;
+  }
+
+  @Override
+  protected ExecutorService initializeExecutor(
+      ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+    if (mode == Mode.WORK_STEALING) {
+      int parallelism = Math.max(getMaxPoolSize(), 1);
+      forkJoinPool = new ForkJoinPool(parallelism, this::newWorkerThread, null, true);
+      room = new Semaphore((int) Math.min((long) parallelism + queueCapacity, Integer.MAX_VALUE));
+      executorService = forkJoinPool;
+    } else {
+      executorService = super.initializeExecutor(threadFactory, (task, executor) -> full(task, timeoutMillis -> {
+        if (!executor.getQueue().offer(task, timeoutMillis, TimeUnit.MILLISECONDS)) {
+          return false;
+        }
+        // the threads may have stopped while the task waited for room
+        if (executor.isShutdown() && executor.remove(task)) {
+          throw new RejectedExecutionException("LoaderScheduler is shut down");
+        }
+        return true;
+      }));
+    }
+    return executorService;
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    return super.newThread(() -> {
+      poolThread.set(Boolean.TRUE);
+      runnable.run();
+    });
+  }
+
+  private ForkJoinWorkerThread newWorkerThread(ForkJoinPool pool) {
+    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+    thread.setName(getThreadNamePrefix() + (thread.getPoolIndex() + 1));
+    return thread;
+  }
+
+  private boolean isPoolThread() {
+    if (forkJoinPool != null) {
+      Thread thread = Thread.currentThread();
+      return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) thread).getPool() == forkJoinPool;
+    }
+    return poolThread.get() != null;
+  }
+
+  /**
+   * Applies the backpressure to a task that found the queue full.
+   */
+  private void full(Runnable task, Room queue) {
+    if (executorService.isShutdown()) {
+      aborted.increment();
+      throw new RejectedExecutionException("LoaderScheduler is shut down");
+    }
+    rejections.increment();
+
+    Long queuedTimeoutMillis = queuedOnly.get();
+    if (queuedTimeoutMillis == null
+        && (backpressure == Backpressure.CALLER_RUNS || (backpressure == Backpressure.BLOCK && isPoolThread()))) {
+      callerRuns.increment();
+      task.run();
+      return;
+    }
+    if (queuedTimeoutMillis != null || backpressure == Backpressure.BLOCK) {
+      try {
+        if (queue.offer(queuedTimeoutMillis != null ? queuedTimeoutMillis : offerTimeoutMillis)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // a submitQueued() that does not wait is a try, the submitter still has the task
+    if (queuedTimeoutMillis == null || queuedTimeoutMillis > 0) {
+      aborted.increment();
+    }
+    throw new RejectedExecutionException(String.format("Queue full: %s tasks", getQueueDepth()));
+  }
+
+  private void fork(Runnable task) {
+    try {
+      forkJoinPool.execute(new Slot(task));
+    } catch (RejectedExecutionException e) {
+      room.release();
+      aborted.increment();
+      throw e;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (forkJoinPool == null) {
+      super.execute(task);
+      return;
+    }
+    try {
+      if (room.tryAcquire()) {
+        fork(task);
+      } else {
+        full(task, timeoutMillis -> {
+          if (!room.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return false;
+          }
+          fork(task);
+          return true;
+        });
+      }
+    } catch (RejectedExecutionException e) {
+      throw new TaskRejectedException("Executor [" + forkJoinPool + "] did not accept task: " + task, e);
+    }
+  }
+
+  @Override
+  public void execute(Runnable task, long startTimeout) {
+    execute(task);
+  }
+
+  @Override
+  public Future<?> submit(Runnable task) {
+    if (forkJoinPool == null) {
+      return super.submit(task);
+    }
+    FutureTask<Object> future = new FutureTask<Object>(task, null);
+    execute(future);
+    return future;
+  }
+
+  @Override
+  public <T> Future<T> submit(Callable<T> task) {
+    if (forkJoinPool == null) {
+      return super.submit(task);
+    }
+    FutureTask<T> future = new FutureTask<T>(task);
+    execute(future);
+    return future;
+  }
+
+  @Override
+  public ListenableFuture<?> submitListenable(Runnable task) {
+    if (forkJoinPool == null) {
+      return super.submitListenable(task);
+    }
+    ListenableFutureTask<Object> future = new ListenableFutureTask<Object>(task, null);
+    execute(future);
+    return future;
+  }
+
+  @Override
+  public <T> ListenableFuture<T> submitListenable(Callable<T> task) {
+    if (forkJoinPool == null) {
+      return super.submitListenable(task);
+    }
+    ListenableFutureTask<T> future = new ListenableFutureTask<T>(task);
+    execute(future);
+    return future;
+  }
+
+  /**
+   * Submits the task to a thread of the pool, whatever the backpressure: if the queue is full, waits up to
+   * {@code timeoutMillis} for room (0 to not wait), then rejects it with a TaskRejectedException. For submitters that
+   * must not run the task themselves, such as a consumer of the task's output. Must not wait on a thread of the pool.
+   */
+  public <T> Future<T> submitQueued(Callable<T> task, long timeoutMillis) {
+    queuedOnly.set(timeoutMillis);
+    try {
+      return submit(task);
+    } finally {
+      queuedOnly.remove();
+    }
+  }
+
+  @Override
+  public int getPoolSize() {
+    return forkJoinPool != null ? forkJoinPool.getPoolSize() : super.getPoolSize();
+  }
+
+  @Override
+  public int getActiveCount() {
+    return forkJoinPool != null ? forkJoinPool.getActiveThreadCount() : super.getActiveCount();
+  }
+
+  /**
+   * Tasks waiting for a thread.
+   */
+  public int getQueueDepth() {
+    if (forkJoinPool != null) {
+      return (int) Math.min(forkJoinPool.getQueuedSubmissionCount() + forkJoinPool.getQueuedTaskCount(),
+          Integer.MAX_VALUE);
+    }
+    return getThreadPoolExecutor().getQueue().size();
+  }
+
+  public long getCompletedTaskCount() {
+    return forkJoinPool != null ? completed.sum() : getThreadPoolExecutor().getCompletedTaskCount();
+  }
+
+  /**
+   * Tasks submitted while the queue was full, whatever the backpressure did with them.
+   */
+  public long getRejections() {
+    return rejections.sum();
+  }
+
+  public long getCallerRuns() {
+    return callerRuns.sum();
+  }
+
+  /**
+   * Tasks refused with a TaskRejectedException: queue full with ABORT, or still full after the offer timeout with
+   * BLOCK, or submitted after shutdown. A {@link #submitQueued(Callable, long)} without wait is not counted.
+   */
+  public long getAborted() {
+    return aborted.sum();
+  }
+
+  /**
+   * Stops taking tasks, runs the queued ones and waits for all to finish, for up to the drain timeout. Then cancels
+   * the tasks still queued and interrupts the running ones.
+   */
+  @Override
+  public void shutdown() {
+    ExecutorService executor = executorService;
+    if (executor == null || executor.isTerminated()) {
+      return;
+    }
+    log.info(String.format("shutdown() start: %s", this));
+
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(drainTimeoutSeconds, TimeUnit.SECONDS)) {
+        int queued = getQueueDepth();
+        cancelAll(executor);
+        log.warn(String.format(
+            "shutdown(): not drained after %s s, %s queued tasks cancelled, running tasks interrupted",
+            drainTimeoutSeconds, queued));
+      }
+    } catch (InterruptedException e) {
+      cancelAll(executor);
+      Thread.currentThread().interrupt();
+    }
+
+    log.info(String.format("shutdown() end: %s", this));
+  }
+
+  private void cancelAll(ExecutorService executor) {
+    // the work-stealing pool cancels its Slots itself
+    List<Runnable> remaining = executor.shutdownNow();
+    for (Runnable task : remaining) {
+      cancelRemainingTask(task);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("LoaderScheduler [mode=%s, backpressure=%s, threads=%s, queueCapacity=%s, active=%s, "
+        + "queueDepth=%s, completed=%s, rejections=%s, callerRuns=%s, aborted=%s]",
+        mode, backpressure, getMaxPoolSize(), queueCapacity, getActiveCount(),
+        getQueueDepth(), getCompletedTaskCount(), rejections.sum(), callerRuns.sum(), aborted.sum());
+  }
+
+}
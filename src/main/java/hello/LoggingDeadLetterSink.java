@@ -0,0 +1,24 @@
+package hello;
+
+import java.sql.SQLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes dead-lettered rows to the "customers.dead-letter" logger, one line per row. Route that logger to its own
+ * file in the logging configuration to collect the rows for a later reload.
+ */
+@Component
+public class LoggingDeadLetterSink implements DeadLetterSink {
+
+  private static final Logger log = LoggerFactory.getLogger("customers.dead-letter");
+
+  @Override
+  public void accept(int chunkNo, String firstName, String lastName, Throwable cause) {
+    String sqlState = cause instanceof SQLException ? ((SQLException) cause).getSQLState() : null;
+    log.warn(String.format("chunk=%s, firstName=%s, lastName=%s, sqlState=%s, cause=%s",
+        chunkNo, firstName, lastName, sqlState, cause));
+  }
+
+}
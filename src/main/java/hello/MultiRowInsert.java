@@ -0,0 +1,86 @@
+package hello;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Inserts with "insert ... values (?, ?), (?, ?), ..." statements of up to {@code batchSize} rows, so that the
+ * database parses and executes one statement per many rows instead of one per row.
+ * <p>
+ * The full statements of a batch go in one JDBC batch. The remaining rows are split into statements of a power of
+ * two rows, so there are at most log2(batchSize) + 1 statement shapes per batch size; their SQL is built once and
+ * the database's statement cache keeps their access plans.
+ */
+class MultiRowInsert implements InsertStrategy {
+
+  // DB2 accepts at most 32767 parameter markers per statement
+  static final int MAX_ROWS_PER_STATEMENT = 32767 / 3;
+
+  private final ConcurrentMap<Integer, String> shapes = new ConcurrentHashMap<Integer, String>();
+
+  @Override
+  public int[][] insert(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    final int rowsPerStatement = Math.max(Math.min(batchSize, MAX_ROWS_PER_STATEMENT), 1);
+    final boolean withIds = batch.hasIds();
+    List<int[]> updateCounts = new ArrayList<int[]>();
+
+    final int statements = batch.size() / rowsPerStatement;
+    if (statements > 0) {
+      updateCounts.add(jdbcTemplate.batchUpdate(shape(rowsPerStatement, withIds), new BatchPreparedStatementSetter() {
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+          bind(ps, batch, i * rowsPerStatement, rowsPerStatement, withIds);
+        }
+
+        @Override
+        public int getBatchSize() {
+          return statements;
+        }
+      }));
+    }
+
+    for (int from = statements * rowsPerStatement; from < batch.size();) {
+      final int offset = from;
+      final int rows = Integer.highestOneBit(batch.size() - from);
+      updateCounts.add(new int[] {
+          jdbcTemplate.update(shape(rows, withIds), ps -> bind(ps, batch, offset, rows, withIds)) });
+      from += rows;
+    }
+
+    return updateCounts.toArray(new int[updateCounts.size()][]);
+  }
+
+  String shape(int rows, boolean withIds) {
+    return shapes.computeIfAbsent(withIds ? -rows : rows, key -> sql(rows, withIds));
+  }
+
+  static String sql(int rows, boolean withIds) {
+    String values = withIds ? "(?, ?, ?)" : "(?, ?)";
+    StringBuilder sql = new StringBuilder(withIds
+        ? "insert into common.customers(ID, FIRST_NAME, LAST_NAME) values "
+        : "insert into common.customers(FIRST_NAME, LAST_NAME) values ");
+    for (int i = 0; i < rows; i++) {
+      sql.append(i == 0 ? "" : ", ").append(values);
+    }
+    return sql.toString();
+  }
+
+  private static void bind(PreparedStatement ps, CustomerBatch batch, int offset, int rows, boolean withIds)
+  throws SQLException {
+    int p = 1;
+    for (int i = offset; i < offset + rows; i++) {
+      if (withIds) {
+        ps.setLong(p++, batch.getId(i));
+      }
+      ps.setString(p++, batch.getFirstName(i));
+      ps.setString(p++, batch.getLastName(i));
+    }
+  }
+
+}
@@ -0,0 +1,183 @@
+package hello;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dictionary encoding of the names of a {@link CustomerSnapshot}: each distinct name is stored once, as UTF-8 bytes in
+ * an off-heap buffer, and rows refer to it by its code (0, 1, 2, ... in the order names were added; -1 is null).
+ * <p>
+ * Names are found through an open addressing hash table, also off-heap, that compares the bytes in place, so neither
+ * the table nor the names are Java objects. Not thread safe while names are added; a snapshot shares a dictionary
+ * with readers only once it is complete.
+ */
+final class NameDictionary {
+
+  static final int NULL = -1;
+
+  private static final int INITIAL_NAMES = 1024;
+
+  // UTF-8 of the names, one after the other
+  private ByteBuffer bytes;
+
+  // int per code: start of the name in bytes; one more entry holds the end of the last name
+  private ByteBuffer offsets;
+
+  // int per code: String.hashCode() of the name, so the table is rebuilt without decoding
+  private ByteBuffer hashes;
+
+  // int per slot: code + 1, 0 = free. At most half full, size is a power of two.
+  private ByteBuffer table;
+
+  private int size;
+
+  NameDictionary() {
+    super();
+    this.bytes = OffHeap.allocate(INITIAL_NAMES * 8L);
+    this.offsets = OffHeap.allocate((INITIAL_NAMES + 1) * 4L);
+    this.hashes = OffHeap.allocate(INITIAL_NAMES * 4L);
+    this.table = OffHeap.allocate(INITIAL_NAMES * 2 * 4L);
+  }
+
+  /**
+   * Copy to add names to without changing this dictionary.
+   */
+  NameDictionary copy() {
+    NameDictionary copy = new NameDictionary();
+    copy.bytes = OffHeap.copy(bytes, end(size - 1), OffHeap.allocate(bytes.capacity()));
+    copy.offsets = OffHeap.copy(offsets, (size + 1) * 4, OffHeap.allocate(offsets.capacity()));
+    copy.hashes = OffHeap.copy(hashes, size * 4, OffHeap.allocate(hashes.capacity()));
+    copy.table = OffHeap.copy(table, table.capacity(), OffHeap.allocate(table.capacity()));
+    copy.size = size;
+    return copy;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Off-heap bytes held.
+   */
+  long capacity() {
+    return (long) bytes.capacity() + offsets.capacity() + hashes.capacity() + table.capacity();
+  }
+
+  /**
+   * Code of the name, or {@link #NULL} if it is null or not in the dictionary.
+   */
+  int code(String name) {
+    if (name == null) {
+      return NULL;
+    }
+    int hash = name.hashCode();
+    int mask = slots() - 1;
+    for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+      int code = table.getInt(slot << 2) - 1;
+      if (code == NULL) {
+        return NULL;
+      }
+      if (hashes.getInt(code << 2) == hash && matches(code, name)) {
+        return code;
+      }
+    }
+  }
+
+  /**
+   * Code of the name, added to the dictionary if it is not there yet.
+   */
+  int encode(String name) {
+    if (name == null) {
+      return NULL;
+    }
+    int code = code(name);
+    if (code != NULL) {
+      return code;
+    }
+
+    byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+    code = size;
+    int start = end(code - 1);
+    bytes = OffHeap.ensureCapacity(bytes, start, (long) start + utf8.length);
+    offsets = OffHeap.ensureCapacity(offsets, (code + 1) * 4, (code + 2) * 4L);
+    hashes = OffHeap.ensureCapacity(hashes, code * 4, (code + 1) * 4L);
+    for (int i = 0; i < utf8.length; i++) {
+      bytes.put(start + i, utf8[i]);
+    }
+    offsets.putInt((code + 1) << 2, start + utf8.length);
+    hashes.putInt(code << 2, name.hashCode());
+    size++;
+
+    if (size * 2 > slots()) {
+      rehash(slots() * 2);
+    } else {
+      insert(code);
+    }
+    return code;
+  }
+
+  String decode(int code) {
+    if (code == NULL) {
+      return null;
+    }
+    int start = end(code - 1);
+    byte[] utf8 = new byte[end(code) - start];
+    for (int i = 0; i < utf8.length; i++) {
+      utf8[i] = bytes.get(start + i);
+    }
+    return new String(utf8, StandardCharsets.UTF_8);
+  }
+
+  private int slots() {
+    return table.capacity() >> 2;
+  }
+
+  // end of the name with the code, i.e. start of the next one; end(-1) is 0
+  private int end(int code) {
+    return code < 0 ? 0 : offsets.getInt((code + 1) << 2);
+  }
+
+  private void insert(int code) {
+    int mask = slots() - 1;
+    int slot = spread(hashes.getInt(code << 2)) & mask;
+    while (table.getInt(slot << 2) != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table.putInt(slot << 2, code + 1);
+  }
+
+  private void rehash(int slots) {
+    table = OffHeap.allocate(slots * 4L);
+    for (int code = 0; code < size; code++) {
+      insert(code);
+    }
+  }
+
+  private boolean matches(int code, String name) {
+    int start = end(code - 1);
+    int length = end(code) - start;
+    if (length == name.length()) {
+      // same length in chars and UTF-8 bytes: an ASCII name, compared char by byte without decoding
+      for (int i = 0; i < length; i++) {
+        char c = name.charAt(i);
+        if (c >= 0x80 || bytes.get(start + i) != (byte) c) {
+          return false;
+        }
+      }
+      return true;
+    }
+    // UTF-8 takes one byte per char of ASCII and more for the rest
+    return length > name.length() && name.equals(decode(code));
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ h >>> 16;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("NameDictionary [size=%s, bytes=%s]", size, end(size - 1));
+  }
+
+}
@@ -0,0 +1,140 @@
+package hello;
+
+/**
+ * Concurrent set of customer names (first and last name) for {@link CustomerUpsert}. The names are held in
+ * open-addressing tables split into 64 independently locked stripes, each slot with a 64-bit fingerprint of the two
+ * names and the names themselves. A lookup compares the fingerprints first and the names only on a match, so it is
+ * exact: two names that share a fingerprint are both kept. A slot takes 16 bytes besides the name Strings.
+ */
+final class NameKeySet {
+
+  private static final int STRIPES = 64;
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+
+  private static final class Stripe {
+    // 0 is a free slot
+    private long[] slots = new long[16];
+    private String[] firstNames = new String[16];
+    private String[] lastNames = new String[16];
+    private int size;
+
+    synchronized boolean contains(long key, String firstName, String lastName) {
+      int mask = slots.length - 1;
+      for (int slot = (int) key & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+        if (slots[slot] == key && firstNames[slot].equals(firstName) && lastNames[slot].equals(lastName)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    synchronized boolean add(long key, String firstName, String lastName) {
+      if ((size + 1) * 2 > slots.length) {
+        long[] oldSlots = slots;
+        String[] oldFirstNames = firstNames;
+        String[] oldLastNames = lastNames;
+        slots = new long[oldSlots.length * 2];
+        firstNames = new String[slots.length];
+        lastNames = new String[slots.length];
+        for (int i = 0; i < oldSlots.length; i++) {
+          if (oldSlots[i] != 0) {
+            put(oldSlots[i], oldFirstNames[i], oldLastNames[i]);
+          }
+        }
+      }
+      if (!put(key, firstName, lastName)) {
+        return false;
+      }
+      size++;
+      return true;
+    }
+
+    private boolean put(long key, String firstName, String lastName) {
+      int mask = slots.length - 1;
+      int slot = (int) key & mask;
+      for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+        if (slots[slot] == key && firstNames[slot].equals(firstName) && lastNames[slot].equals(lastName)) {
+          return false;
+        }
+      }
+      slots[slot] = key;
+      firstNames[slot] = firstName;
+      lastNames[slot] = lastName;
+      return true;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized long bytes() {
+      return slots.length * 16L;
+    }
+  }
+
+  NameKeySet() {
+    super();
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Fingerprint of the names: FNV-1a over the characters of both and the length of the first, so that ("ab", "c")
+   * and ("a", "bc") differ, then the MurmurHash3 finalizer to spread the bits. Never 0.
+   */
+  static long key(String firstName, String lastName) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < firstName.length(); i++) {
+      h = (h ^ firstName.charAt(i)) * 0x100000001b3L;
+    }
+    h = (h ^ firstName.length()) * 0x100000001b3L;
+    for (int i = 0; i < lastName.length(); i++) {
+      h = (h ^ lastName.charAt(i)) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h != 0 ? h : 1;
+  }
+
+  /**
+   * @param firstName not null
+   * @param lastName not null
+   */
+  boolean contains(String firstName, String lastName) {
+    long key = key(firstName, lastName);
+    // stripe from the top bits, slot from the bottom ones
+    return stripes[(int) (key >>> 58)].contains(key, firstName, lastName);
+  }
+
+  /**
+   * @param firstName not null
+   * @param lastName not null
+   * @return false if the names were in the set already
+   */
+  boolean add(String firstName, String lastName) {
+    long key = key(firstName, lastName);
+    return stripes[(int) (key >>> 58)].add(key, firstName, lastName);
+  }
+
+  int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      size += stripe.size();
+    }
+    return size;
+  }
+
+  long bytes() {
+    long bytes = 0;
+    for (Stripe stripe : stripes) {
+      bytes += stripe.bytes();
+    }
+    return bytes;
+  }
+
+}
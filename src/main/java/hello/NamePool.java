@@ -0,0 +1,60 @@
+package hello;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool of name Strings for the row mappers: a name read again while its String is still in the pool is
+ * replaced by the pooled one, so that repeated names ("Josh") are held once per result instead of once per row.
+ * <p>
+ * The pool is a fixed array indexed by hash, with two slots per name; a new name takes a free one or evicts the name
+ * in the first. Memory use is bounded by customer.query.name-pool-size and lookups take no lock; unsynchronized slot
+ * writes are safe because Strings are immutable, a lost write only costs a duplicate. A size of 0 turns pooling off.
+ */
+@Component
+public class NamePool {
+
+  private final String[] slots;
+
+  // slot = top bits of the hash times 2^32 / phi, which spreads similar names ("Last1", "Last2") evenly
+  private final int shift;
+
+  public NamePool(@Value("${customer.query.name-pool-size:16384}") int size) {
+    super();
+    if (size < 0) {
+      throw new IllegalArgumentException("size must not be negative: " + size);
+    }
+    int capacity = size == 0 ? 0 : Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+    this.slots = new String[capacity];
+    this.shift = 32 - Integer.numberOfTrailingZeros(Math.max(capacity, 1));
+  }
+
+  public String intern(String name) {
+    if (name == null || slots.length == 0) {
+      return name;
+    }
+    int slot = (name.hashCode() * 0x9E3779B9) >>> shift;
+    // two candidate slots next to each other, so that a collision does not evict a name at once
+    int other = slot ^ 1;
+    String pooled = slots[slot];
+    if (name.equals(pooled)) {
+      return pooled;
+    }
+    String pooledOther = slots[other];
+    if (name.equals(pooledOther)) {
+      return pooledOther;
+    }
+    slots[pooled == null || pooledOther != null ? slot : other] = name;
+    return name;
+  }
+
+  public int getCapacity() {
+    return slots.length;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("NamePool [capacity=%s]", slots.length);
+  }
+
+}
@@ -0,0 +1,47 @@
+package hello;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Direct (off-heap) buffers of {@link CustomerSnapshot} and {@link NameDictionary}. Their memory is outside the Java
+ * heap, so the GC neither copies nor scans it; it is freed when the buffer object is collected. The total is capped by
+ * -XX:MaxDirectMemorySize (default: the maximum heap size).
+ */
+final class OffHeap {
+
+  private OffHeap() {
+  }
+
+  static ByteBuffer allocate(long bytes) {
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Off-heap buffer over 2 GB: " + bytes + " bytes");
+    }
+    return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Returns the buffer, or a copy of its first {@code used} bytes in a buffer of at least twice the size when it has
+   * less than {@code required} bytes.
+   */
+  static ByteBuffer ensureCapacity(ByteBuffer buffer, int used, long required) {
+    if (required <= buffer.capacity()) {
+      return buffer;
+    }
+    ByteBuffer grown = allocate(Math.max(required, Math.min(2L * buffer.capacity(), Integer.MAX_VALUE)));
+    return copy(buffer, used, grown);
+  }
+
+  /**
+   * Copies the first {@code used} bytes of {@code from} to the start of {@code to}.
+   */
+  static ByteBuffer copy(ByteBuffer from, int used, ByteBuffer to) {
+    ByteBuffer source = from.duplicate();
+    source.clear().limit(used);
+    ByteBuffer target = to.duplicate();
+    target.clear();
+    target.put(source);
+    return to;
+  }
+
+}
@@ -0,0 +1,92 @@
+package hello;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool metrics collected from Hikari: pool occupancy, how long threads wait for a connection and how
+ * often they give up.
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+  private volatile PoolStats poolStats;
+
+  private final LongAdder acquisitions = new LongAdder();
+
+  private final LongAdder acquireNanos = new LongAdder();
+
+  private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+
+  private final LongAdder timeouts = new LongAdder();
+
+  @Override
+  public IMetricsTracker create(String poolName, PoolStats poolStats) {
+    this.poolStats = poolStats;
+
+    return new IMetricsTracker() {
+
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        acquireNanos.add(elapsedAcquiredNanos);
+        maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+      }
+
+      @Override
+      public void recordConnectionTimeout() {
+        timeouts.increment();
+      }
+
+    };
+  }
+
+  public int getActiveConnections() {
+    PoolStats stats = poolStats;
+    return stats == null ? 0 : stats.getActiveConnections();
+  }
+
+  public int getIdleConnections() {
+    PoolStats stats = poolStats;
+    return stats == null ? 0 : stats.getIdleConnections();
+  }
+
+  public int getTotalConnections() {
+    PoolStats stats = poolStats;
+    return stats == null ? 0 : stats.getTotalConnections();
+  }
+
+  public int getPendingThreads() {
+    PoolStats stats = poolStats;
+    return stats == null ? 0 : stats.getPendingThreads();
+  }
+
+  public long getAcquisitions() {
+    return acquisitions.sum();
+  }
+
+  public double getAverageWaitMillis() {
+    long count = acquisitions.sum();
+    return count == 0 ? 0 : acquireNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public double getMaxWaitMillis() {
+    return maxAcquireNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PoolMetrics [active=%s, idle=%s, total=%s, pending=%s, acquisitions=%s, avgWaitMs=%.3f, "
+        + "maxWaitMs=%.3f, timeouts=%s]",
+        getActiveConnections(), getIdleConnections(), getTotalConnections(), getPendingThreads(),
+        getAcquisitions(), getAverageWaitMillis(), getMaxWaitMillis(), getTimeouts());
+  }
+
+}
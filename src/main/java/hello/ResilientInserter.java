@@ -0,0 +1,167 @@
+package hello;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recovery mode of the insert path: a bad row no longer rolls back the good rows of its chunk.
+ * <ol>
+ * <li>The chunk is inserted in JDBC batches; the rows the database accepts are committed and the rejected ones are
+ * picked out by their update counts.</li>
+ * <li>The rejected rows are inserted again one per statement, so that each failure is attributed to its row.</li>
+ * <li>Rows that fail with a transient error (connection, deadlock, timeout) are retried up to
+ * customer.insert.retry.max-retries times, with exponential backoff. Other failures are permanent and go to the
+ * {@link DeadLetterSink} at once, as do the rows still failing after the last retry.</li>
+ * </ol>
+ */
+@Component
+public class ResilientInserter {
+
+  private static final Logger log = LoggerFactory.getLogger(ResilientInserter.class);
+
+  @Autowired
+  CustomerService custService;
+
+  @Autowired
+  DeadLetterSink deadLetterSink;
+
+  @Autowired
+  LoaderMetrics loaderMetrics;
+
+  @Value("${customer.insert.retry.max-retries:3}")
+  int maxRetries;
+
+  @Value("${customer.insert.retry.backoff-ms:100}")
+  long backoffMs;
+
+  @Value("${customer.insert.retry.max-backoff-ms:5000}")
+  long maxBackoffMs;
+
+  public static BulkLoadResult insertDataResilient(
+      List<Object[]> splitNames, ResilientInserter inserter, ThreadPoolTaskExecutor taskExecutor)
+  throws Exception {
+    log.info("insertDataResilient() start");
+
+    BulkLoader loader = BulkLoader.forExecutor(taskExecutor, inserter.custService.getBatchSize(), splitNames.size());
+    BulkLoadResult result = loader.load(splitNames,
+        (chunkNo, chunk) -> taskExecutor.submitListenable(
+            () -> inserter.insert(chunkNo, CustomerBatch.of(chunk))).completable());
+
+    log.info("insertDataResilient() end");
+
+    return result;
+  }
+
+  public ChunkResult insert(int chunkNo, CustomerBatch batch)
+  throws InterruptedException {
+    int rowsInserted = 0;
+    int rowsRetried = 0;
+    int rowsDeadLettered = 0;
+    int retries = 0;
+    int batchSize = custService.getBatchSize();
+    CustomerBatch pending = batch;
+
+    try {
+      while (!pending.isEmpty()) {
+        BatchInsertOutcome outcome = null;
+        try {
+          outcome = custService.insertDataPartial(pending, batchSize);
+        } catch (Exception e) {
+          // the transaction was rolled back, so none of the pending rows is in
+          if (!isTransient(e) || retries >= maxRetries) {
+            log.error(String.format("insert(): chunk %s given up with %s rows pending", chunkNo, pending.size()), e);
+            return ChunkResult.recovered(chunkNo, batch.size(), rowsInserted, rowsRetried, rowsDeadLettered, e);
+          }
+          backoff(++retries);
+          rowsRetried += pending.size();
+          continue;
+        }
+
+        // an upserted name that was in the table already is done too
+        rowsInserted += outcome.getRowsInserted() + outcome.getRowsMatched();
+        CustomerBatch failed = outcome.getFailedRows();
+        if (failed.isEmpty()) {
+          break;
+        }
+
+        if (batchSize > 1) {
+          // isolate the failed rows; no backoff, most of them are expected to be permanent
+          batchSize = 1;
+          rowsRetried += failed.size();
+          pending = failed;
+          continue;
+        }
+
+        CustomerBatch retry = new CustomerBatch(failed.size());
+        for (int i = 0; i < failed.size(); i++) {
+          SQLException cause = outcome.getCause(i);
+          if (retries < maxRetries && isTransient(cause)) {
+            retry.add(failed.getFirstName(i), failed.getLastName(i));
+          } else {
+            deadLetterSink.accept(chunkNo, failed.getFirstName(i), failed.getLastName(i), cause);
+            rowsDeadLettered++;
+          }
+        }
+        if (!retry.isEmpty()) {
+          backoff(++retries);
+          rowsRetried += retry.size();
+        }
+        pending = retry;
+      }
+    } finally {
+      loaderMetrics.recordRecovery(CustomerService.METRICS_TAG, rowsRetried, rowsDeadLettered);
+    }
+
+    ChunkResult result =
+        ChunkResult.recovered(chunkNo, batch.size(), rowsInserted, rowsRetried, rowsDeadLettered, null);
+    if (!result.isSuccess()) {
+      log.warn(String.format("insert(): %s", result));
+    }
+    return result;
+  }
+
+  private void backoff(int retry)
+  throws InterruptedException {
+    long delay = Math.min(backoffMs << Math.min(retry - 1, 20), maxBackoffMs);
+    // up to 50% jitter, so that the threads of the pool do not retry in lockstep
+    Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+  }
+
+  /**
+   * True for errors worth retrying: transient and recoverable exceptions, and SQLSTATE classes 08 (connection),
+   * 40 (transaction rolled back, e.g. deadlock) and 57 (DB2 resource not available).
+   */
+  static boolean isTransient(Throwable t) {
+    for (; t != null; t = t.getCause()) {
+      if (t instanceof TransientDataAccessException || t instanceof RecoverableDataAccessException
+          || t instanceof SQLTransientException || t instanceof SQLRecoverableException) {
+        return true;
+      }
+      if (t instanceof SQLException) {
+        for (SQLException se = (SQLException) t; se != null; se = se.getNextException()) {
+          String sqlState = se.getSQLState();
+          if (sqlState != null
+              && (sqlState.startsWith("08") || sqlState.startsWith("40") || sqlState.startsWith("57"))) {
+            return true;
+          }
+        }
+      }
+      if (t.getCause() == t) {
+        break;
+      }
+    }
+    return false;
+  }
+
+}
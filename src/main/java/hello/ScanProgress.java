@@ -0,0 +1,108 @@
+package hello;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Partitions of a {@link CustomerScanner} scan and the rows read from each so far. Updated by the scanning threads,
+ * readable from any thread while the scan runs.
+ */
+public class ScanProgress {
+  private final long[] fromIds;
+  private final long[] toIds;
+  private final AtomicLongArray rows;
+  private final AtomicLongArray elapsedNanos;
+  private final AtomicInteger partitionsDone = new AtomicInteger();
+  private final long start = System.nanoTime();
+  private volatile long end;
+  private volatile boolean cancelled;
+
+  /**
+   * @param ranges first and last ID of each partition
+   */
+  ScanProgress(List<long[]> ranges) {
+    super();
+    this.fromIds = new long[ranges.size()];
+    this.toIds = new long[ranges.size()];
+    for (int i = 0; i < ranges.size(); i++) {
+      fromIds[i] = ranges.get(i)[0];
+      toIds[i] = ranges.get(i)[1];
+    }
+    this.rows = new AtomicLongArray(ranges.size());
+    this.elapsedNanos = new AtomicLongArray(ranges.size());
+  }
+
+  void scanned(int partitionNo, int rowCount) {
+    rows.addAndGet(partitionNo, rowCount);
+  }
+
+  /**
+   * @return number of partitions done, this one included
+   */
+  int done(int partitionNo) {
+    elapsedNanos.set(partitionNo, Math.max(System.nanoTime() - start, 1));
+    return partitionsDone.incrementAndGet();
+  }
+
+  void finished() {
+    end = System.nanoTime();
+  }
+
+  /**
+   * Stops the partitions still running at their next row.
+   */
+  void cancel() {
+    cancelled = true;
+  }
+
+  boolean isCancelled() {
+    return cancelled;
+  }
+
+  public int getPartitions() {
+    return fromIds.length;
+  }
+
+  public long getFromId(int partitionNo) {
+    return fromIds[partitionNo];
+  }
+
+  public long getToId(int partitionNo) {
+    return toIds[partitionNo];
+  }
+
+  public long getRows(int partitionNo) {
+    return rows.get(partitionNo);
+  }
+
+  public boolean isDone(int partitionNo) {
+    return elapsedNanos.get(partitionNo) > 0;
+  }
+
+  public int getPartitionsDone() {
+    return partitionsDone.get();
+  }
+
+  public long getRows() {
+    long total = 0;
+    for (int i = 0; i < fromIds.length; i++) {
+      total += rows.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Time since the scan started, or that the scan took once it is over.
+   */
+  public long getElapsedMillis() {
+    return ((end != 0 ? end : System.nanoTime()) - start) / 1000000;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("ScanProgress [partitions=%s, partitionsDone=%s, rows=%s, elapsedMillis=%s]",
+        getPartitions(), getPartitionsDone(), getRows(), getElapsedMillis());
+  }
+
+}
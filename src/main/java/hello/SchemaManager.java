@@ -0,0 +1,259 @@
+package hello;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates and upgrades the customers schema without dropping data. The schema is described by numbered versions; the
+ * versions applied are recorded in common.schema_version and only the missing ones run. Each version skips objects
+ * that already exist, so a database created before versioning is taken over as it is.
+ * <p>
+ * With customer.schema.recreate=true everything is dropped and created again first, as the demo did before.
+ * <p>
+ * The ID strategy (customer.id.strategy) is fixed when common.customers is created; changing it later needs a
+ * recreate. Start one node first when several nodes share a database: versions are not locked against each other.
+ */
+@Component
+public class SchemaManager {
+
+  private static final Logger log = LoggerFactory.getLogger(SchemaManager.class);
+
+  private static final String SELECT_VERSIONS = "select VERSION from common.schema_version";
+
+  private static final String INSERT_VERSION =
+      "insert into common.schema_version(VERSION, DESCRIPTION, INSTALLED_ON) values (?, ?, ?)";
+
+  private static final String DB2_SEQUENCE_EXISTS =
+      "select count(*) from syscat.sequences where seqschema = 'COMMON' and seqname = 'CUSTOMERS_ID_SEQ'";
+
+  private static final String SEQUENCE_EXISTS =
+      "select count(*) from information_schema.sequences "
+      + "where sequence_schema = 'COMMON' and sequence_name = 'CUSTOMERS_ID_SEQ'";
+
+  private static final String DB2_RUNSTATS =
+      "call sysproc.admin_cmd('RUNSTATS ON TABLE COMMON.CUSTOMERS WITH DISTRIBUTION AND DETAILED INDEXES ALL')";
+
+  private static final String H2_ANALYZE = "analyze table common.customers";
+
+  private static final class Version {
+    final int number;
+    final String description;
+    final Runnable apply;
+
+    Version(int number, String description, Runnable apply) {
+      this.number = number;
+      this.description = description;
+      this.apply = apply;
+    }
+  }
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final IdAllocator idAllocator;
+
+  private final CustomerUpsert customerUpsert;
+
+  private final boolean recreate;
+
+  private final boolean includeLastName;
+
+  private final boolean deferIndexes;
+
+  private final List<Version> versions = new ArrayList<Version>();
+
+  // true while a bulkLoad() runs without the secondary indexes, guarded by this
+  private boolean indexesDeferred;
+
+  public SchemaManager(
+      JdbcTemplate jdbcTemplate,
+      IdAllocator idAllocator,
+      CustomerUpsert customerUpsert,
+      @Value("${customer.schema.recreate:false}") boolean recreate,
+      @Value("${customer.schema.first-name-index.include-last-name:false}") boolean includeLastName,
+      @Value("${customer.schema.defer-indexes:false}") boolean deferIndexes) {
+    super();
+    this.jdbcTemplate = jdbcTemplate;
+    this.idAllocator = idAllocator;
+    this.customerUpsert = customerUpsert;
+    this.recreate = recreate;
+    this.includeLastName = includeLastName;
+    this.deferIndexes = deferIndexes;
+
+    versions.add(new Version(1, "customers table", () -> {
+      if (!tableExists("CUSTOMERS")) {
+        jdbcTemplate.execute(CustomerSchema.createTable(idAllocator));
+        // the names read before the table was dropped are gone
+        customerUpsert.reset();
+      }
+    }));
+    versions.add(new Version(2, "customers ID sequence", () -> {
+      if (!sequenceExists()) {
+        jdbcTemplate.execute(CustomerSchema.createSequence(idAllocator));
+        idAllocator.reset();
+        customerUpsert.reset();
+      }
+    }));
+    versions.add(new Version(3, "customers stage table", () -> {
+      if (!tableExists("CUSTOMERS_STAGE")) {
+        jdbcTemplate.execute(CustomerSchema.createStageTable());
+        jdbcTemplate.execute(CustomerSchema.CREATE_STAGE_INDEX);
+      }
+    }));
+    versions.add(new Version(4, "customers FIRST_NAME index", this::buildIndexes));
+    versions.add(new Version(5, "bulk load checkpoint table", () -> {
+      if (!tableExists("LOAD_CHECKPOINT")) {
+        jdbcTemplate.execute(CustomerSchema.CREATE_LOAD_CHECKPOINT_TABLE);
+      }
+    }));
+  }
+
+  public int getVersion() {
+    return versions.get(versions.size() - 1).number;
+  }
+
+  /**
+   * Brings the schema to the current version. Safe to call at every start.
+   */
+  public synchronized void migrate() {
+    log.info("migrate() start");
+
+    if (recreate) {
+      CustomerSchema.drop(jdbcTemplate);
+      idAllocator.reset();
+      customerUpsert.reset();
+    }
+
+    if (!tableExists("SCHEMA_VERSION")) {
+      jdbcTemplate.execute(CustomerSchema.CREATE_SCHEMA_VERSION_TABLE);
+    }
+    Set<Integer> applied = new HashSet<Integer>(jdbcTemplate.queryForList(SELECT_VERSIONS, Integer.class));
+
+    for (Version version : versions) {
+      if (applied.contains(version.number)) {
+        continue;
+      }
+      log.info(String.format("migrate(): applying version %s, %s", version.number, version.description));
+      version.apply.run();
+      jdbcTemplate.update(
+          INSERT_VERSION, version.number, version.description, new Timestamp(System.currentTimeMillis()));
+    }
+
+    // an earlier bulkLoad() may have stopped before it rebuilt the indexes
+    if (!indexesDeferred) {
+      buildIndexes();
+    }
+
+    log.info(String.format("migrate() end: version=%s", getVersion()));
+  }
+
+  /**
+   * Runs a large load. With customer.schema.defer-indexes=true the secondary indexes are dropped for the load, so rows
+   * are not added to them one by one, then built in one pass afterwards, also when the load fails. Statistics are
+   * collected after the load either way. Lookups by FIRST_NAME scan the table while the load runs.
+   */
+  public <T> T bulkLoad(Callable<T> load)
+  throws Exception {
+    log.info("bulkLoad() start");
+
+    if (deferIndexes) {
+      dropIndexes();
+    }
+    try {
+      return load.call();
+    } finally {
+      if (deferIndexes) {
+        synchronized (this) {
+          indexesDeferred = false;
+          buildIndexes();
+        }
+      }
+      collectStatistics();
+
+      log.info("bulkLoad() end");
+    }
+  }
+
+  synchronized void dropIndexes() {
+    indexesDeferred = true;
+    if (indexExists(CustomerSchema.FIRST_NAME_INDEX)) {
+      jdbcTemplate.execute(CustomerSchema.DROP_FIRST_NAME_INDEX);
+    }
+  }
+
+  /**
+   * Creates the secondary indexes that do not exist.
+   */
+  synchronized void buildIndexes() {
+    if (!indexExists(CustomerSchema.FIRST_NAME_INDEX)) {
+      long start = System.nanoTime();
+      jdbcTemplate.execute(CustomerSchema.createFirstNameIndex(includeLastName));
+      log.info(String.format("buildIndexes(): %s built in %s ms",
+          CustomerSchema.FIRST_NAME_INDEX, (System.nanoTime() - start) / 1000000));
+    }
+  }
+
+  /**
+   * Updates the optimizer statistics of common.customers (RUNSTATS on DB2, ANALYZE on H2), so that the index is used
+   * after a large load.
+   */
+  public void collectStatistics() {
+    String product = databaseProduct();
+    if (product.startsWith("DB2")) {
+      jdbcTemplate.execute(DB2_RUNSTATS);
+    } else if (product.startsWith("H2")) {
+      jdbcTemplate.execute(H2_ANALYZE);
+    } else {
+      log.warn(String.format("collectStatistics(): not supported on %s", product));
+    }
+  }
+
+  private String databaseProduct() {
+    return jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+  }
+
+  private boolean tableExists(String table) {
+    return jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+      try (ResultSet rs = con.getMetaData().getTables(null, "COMMON", table, null)) {
+        return rs.next();
+      }
+    });
+  }
+
+  private boolean indexExists(String index) {
+    return jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+      DatabaseMetaData metaData = con.getMetaData();
+      try (ResultSet rs = metaData.getIndexInfo(null, "COMMON", "CUSTOMERS", false, true)) {
+        while (rs.next()) {
+          if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+            return true;
+          }
+        }
+        return false;
+      }
+    });
+  }
+
+  private boolean sequenceExists() {
+    String sql = databaseProduct().startsWith("DB2") ? DB2_SEQUENCE_EXISTS : SEQUENCE_EXISTS;
+    return jdbcTemplate.queryForObject(sql, Integer.class) > 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("SchemaManager [version=%s, recreate=%s, includeLastName=%s, deferIndexes=%s]",
+        getVersion(), recreate, includeLastName, deferIndexes);
+  }
+
+}
@@ -0,0 +1,129 @@
+package hello;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+
+/**
+ * Loads the batch into the common.customers_stage table, moves it to common.customers with one
+ * "insert ... select from" and deletes it from the stage, all in the caller's transaction.
+ * <p>
+ * The stage has no primary key, identity or unique index, so filling it is cheap, and the move is one set operation
+ * inside the database. This pays off for very large loads on DB2; on a small or in-memory database the extra copy
+ * costs more than it saves. Rows are tagged with a random load ID, so concurrent loads share the stage without
+ * seeing each other's rows.
+ */
+class StagingInsert implements InsertStrategy {
+
+  private static final Logger log = LoggerFactory.getLogger(StagingInsert.class);
+
+  static final String INSERT_STAGE =
+      "insert into common.customers_stage(FIRST_NAME, LAST_NAME, LOAD_ID) values (?, ?, ?)";
+
+  static final String INSERT_STAGE_WITH_ID =
+      "insert into common.customers_stage(ID, FIRST_NAME, LAST_NAME, LOAD_ID) values (?, ?, ?, ?)";
+
+  static final String MOVE =
+      "insert into common.customers(FIRST_NAME, LAST_NAME) "
+      + "select FIRST_NAME, LAST_NAME from common.customers_stage where LOAD_ID = ?";
+
+  static final String MOVE_WITH_ID =
+      "insert into common.customers(ID, FIRST_NAME, LAST_NAME) "
+      + "select ID, FIRST_NAME, LAST_NAME from common.customers_stage where LOAD_ID = ?";
+
+  // the names not in common.customers, once each (with the lowest staged ID), and the rows with a null name
+  static final String MOVE_MISSING =
+      "insert into common.customers(FIRST_NAME, LAST_NAME) "
+      + "select FIRST_NAME, LAST_NAME from common.customers_stage s "
+      + "where LOAD_ID = ? and FIRST_NAME is not null and LAST_NAME is not null and not exists "
+      + "(select 1 from common.customers c where c.FIRST_NAME = s.FIRST_NAME and c.LAST_NAME = s.LAST_NAME) "
+      + "group by FIRST_NAME, LAST_NAME "
+      + "union all "
+      + "select FIRST_NAME, LAST_NAME from common.customers_stage "
+      + "where LOAD_ID = ? and (FIRST_NAME is null or LAST_NAME is null)";
+
+  static final String MOVE_MISSING_WITH_ID =
+      "insert into common.customers(ID, FIRST_NAME, LAST_NAME) "
+      + "select min(ID), FIRST_NAME, LAST_NAME from common.customers_stage s "
+      + "where LOAD_ID = ? and FIRST_NAME is not null and LAST_NAME is not null and not exists "
+      + "(select 1 from common.customers c where c.FIRST_NAME = s.FIRST_NAME and c.LAST_NAME = s.LAST_NAME) "
+      + "group by FIRST_NAME, LAST_NAME "
+      + "union all "
+      + "select ID, FIRST_NAME, LAST_NAME from common.customers_stage "
+      + "where LOAD_ID = ? and (FIRST_NAME is null or LAST_NAME is null)";
+
+  static final String DELETE_STAGE = "delete from common.customers_stage where LOAD_ID = ?";
+
+  @Override
+  public int[][] insert(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize) {
+    long loadId = newLoadId();
+    int[][] updateCounts = stage(jdbcTemplate, batch, batchSize, loadId);
+    int moved = move(jdbcTemplate, batch.hasIds(), loadId);
+    log.info(String.format("insert(): staged=%s, moved=%s", batch.size(), moved));
+    // the moved rows are the staged rows again: DataLogger sums the update counts, so they report each row once
+    return updateCounts;
+  }
+
+  static long newLoadId() {
+    // 0 is "not staged" in common.load_checkpoint
+    return 1 + ThreadLocalRandom.current().nextLong(Long.MAX_VALUE - 1);
+  }
+
+  /**
+   * Appends the batch to the stage table under {@code loadId}.
+   *
+   * @return update counts, one array per JDBC batch
+   */
+  static int[][] stage(JdbcTemplate jdbcTemplate, CustomerBatch batch, int batchSize, long loadId) {
+    if (batch.size() == 0) {
+      return new int[0][];
+    }
+    final boolean withIds = batch.hasIds();
+    final CustomerBatchSetter setter = new CustomerBatchSetter(batch);
+    setter.window(0, batch.size());
+    BatchPreparedStatementSetter stageSetter = new BatchPreparedStatementSetter() {
+      @Override
+      public void setValues(PreparedStatement ps, int i) throws SQLException {
+        setter.setValues(ps, i);
+        ps.setLong(withIds ? 4 : 3, loadId);
+      }
+
+      @Override
+      public int getBatchSize() {
+        return setter.getBatchSize();
+      }
+    };
+
+    return jdbcTemplate.execute(withIds ? INSERT_STAGE_WITH_ID : INSERT_STAGE,
+        (PreparedStatementCallback<int[][]>) ps -> CustomerBatchSetter.executeBatches(ps, stageSetter, batchSize));
+  }
+
+  /**
+   * Moves the rows staged under {@code loadId} to common.customers.
+   *
+   * @return number of rows moved
+   */
+  static int move(JdbcTemplate jdbcTemplate, boolean withIds, long loadId) {
+    return move(jdbcTemplate, withIds, loadId, false);
+  }
+
+  /**
+   * Moves the rows staged under {@code loadId} to common.customers; with {@code upsert} only the names that are not
+   * in it yet, each once, as {@link CustomerUpsert} does.
+   *
+   * @return number of rows moved
+   */
+  static int move(JdbcTemplate jdbcTemplate, boolean withIds, long loadId, boolean upsert) {
+    int moved = upsert
+        ? jdbcTemplate.update(withIds ? MOVE_MISSING_WITH_ID : MOVE_MISSING, loadId, loadId)
+        : jdbcTemplate.update(withIds ? MOVE_WITH_ID : MOVE, loadId);
+    jdbcTemplate.update(DELETE_STAGE, loadId);
+    return moved;
+  }
+
+}
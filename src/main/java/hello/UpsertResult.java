@@ -0,0 +1,52 @@
+package hello;
+
+/**
+ * Result of an upsert of a batch by {@link CustomerUpsert}: the rows inserted, the rows the database already had
+ * (matched by the MERGE) and the rows skipped in memory without a statement, as duplicates of a known customer or of
+ * an earlier row of the batch.
+ */
+public class UpsertResult {
+  private int rowsInserted;
+  private int rowsMatched;
+  private int rowsSkipped;
+  private int[][] updateCounts = new int[0][];
+
+  void inserted() {
+    rowsInserted++;
+  }
+
+  void matched() {
+    rowsMatched++;
+  }
+
+  void skipped() {
+    rowsSkipped++;
+  }
+
+  void setUpdateCounts(int[][] updateCounts) {
+    this.updateCounts = updateCounts;
+  }
+
+  int[][] getUpdateCounts() {
+    return updateCounts;
+  }
+
+  public int getRowsInserted() {
+    return rowsInserted;
+  }
+
+  public int getRowsMatched() {
+    return rowsMatched;
+  }
+
+  public int getRowsSkipped() {
+    return rowsSkipped;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("UpsertResult [rowsInserted=%s, rowsMatched=%s, rowsSkipped=%s]",
+        rowsInserted, rowsMatched, rowsSkipped);
+  }
+
+}
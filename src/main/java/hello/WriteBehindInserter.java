@@ -0,0 +1,249 @@
+package hello;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind buffer for callers that insert a few customers at a time: {@link #insert(String, String)} queues the
+ * customer and returns at once, and a background thread inserts the queued customers in large batches, one
+ * transaction each, through {@link CustomerService#insertDataReturningKeys(CustomerBatch)}.
+ * <p>
+ * A batch is written when it has customer.write-behind.batch-rows customers, or when its first customer has waited
+ * customer.write-behind.max-delay-ms. The future of each customer completes with its ID after the commit, or
+ * exceptionally with the failure of its batch: a batch is committed or rolled back as a whole.
+ * <p>
+ * The queue is a lock-free linked queue bounded to customer.write-behind.capacity customers. When it is full, callers
+ * wait up to customer.write-behind.offer-timeout-ms for room (backpressure) and then get a RejectedExecutionException.
+ * The writer runs on its own thread rather than on pool-01, whose threads it would otherwise hold for good.
+ * {@link #flush()} waits until everything queued is written, and the buffer is flushed when the application stops.
+ */
+@Component
+public class WriteBehindInserter {
+
+  private static final Logger log = LoggerFactory.getLogger(WriteBehindInserter.class);
+
+  private static final class Entry {
+    final String firstName;
+    final String lastName;
+    final long queuedAt;
+    // a flush() marker rather than a customer
+    final boolean flush;
+    final CompletableFuture<Long> id = new CompletableFuture<Long>();
+
+    Entry(String firstName, String lastName, long queuedAt, boolean flush) {
+      this.firstName = firstName;
+      this.lastName = lastName;
+      this.queuedAt = queuedAt;
+      this.flush = flush;
+    }
+  }
+
+  private final CustomerService custService;
+
+  private final int batchRows;
+
+  private final long maxDelayNanos;
+
+  private final long offerTimeoutMillis;
+
+  private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+
+  // one permit per customer the queue has room for
+  private final Semaphore room;
+
+  private final AtomicInteger queued = new AtomicInteger();
+
+  private final Thread writer;
+
+  private volatile boolean closed;
+
+  private final LongAdder batches = new LongAdder();
+
+  private final LongAdder rowsWritten = new LongAdder();
+
+  private final LongAdder rowsFailed = new LongAdder();
+
+  public WriteBehindInserter(
+      CustomerService custService,
+      @Value("${customer.write-behind.capacity:10000}") int capacity,
+      @Value("${customer.write-behind.batch-rows:1000}") int batchRows,
+      @Value("${customer.write-behind.max-delay-ms:50}") long maxDelayMillis,
+      @Value("${customer.write-behind.offer-timeout-ms:1000}") long offerTimeoutMillis) {
+    super();
+    if (batchRows < 1) {
+      throw new IllegalArgumentException("batchRows must be positive: " + batchRows);
+    }
+    this.custService = custService;
+    this.batchRows = batchRows;
+    this.maxDelayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(maxDelayMillis), 1);
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.room = new Semaphore(capacity);
+
+    this.writer = new Thread(this::writeBatches, "write-behind");
+    // a pending write does not keep the JVM alive; close() at shutdown writes it
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queues a customer for insertion.
+   *
+   * @return the ID of the customer once it is committed
+   * @throws RejectedExecutionException if the buffer is closed, or still full after
+   *         customer.write-behind.offer-timeout-ms
+   */
+  public CompletableFuture<Long> insert(String firstName, String lastName)
+  throws InterruptedException {
+    if (closed) {
+      throw new RejectedExecutionException("WriteBehindInserter is closed");
+    }
+    if (!room.tryAcquire(offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+      throw new RejectedExecutionException(String.format("Write-behind queue full: %s customers", queued.get()));
+    }
+
+    Entry entry = new Entry(firstName, lastName, System.nanoTime(), false);
+    // counted before it is queued, so the count never drops below the customers in the queue
+    int count = queued.incrementAndGet();
+    try {
+      enqueue(entry);
+    } catch (RejectedExecutionException e) {
+      queued.decrementAndGet();
+      room.release();
+      throw e;
+    }
+    if (count == 1) {
+      // the writer waits for the first customer of a batch
+      LockSupport.unpark(writer);
+    }
+    return entry.id;
+  }
+
+  /**
+   * Writes the customers queued so far without waiting for the batch size or delay, and returns when they are
+   * committed (or failed).
+   */
+  public void flush()
+  throws InterruptedException, ExecutionException {
+    Entry marker = new Entry(null, null, System.nanoTime(), true);
+    enqueue(marker);
+    LockSupport.unpark(writer);
+    marker.id.get();
+  }
+
+  /**
+   * Stops taking customers, writes the ones queued and stops the writer thread.
+   */
+  @PreDestroy
+  public void close()
+  throws InterruptedException {
+    log.info("close() start");
+
+    closed = true;
+    LockSupport.unpark(writer);
+    writer.join();
+    // queued by callers that passed the closed check just before it was set
+    for (Entry entry = queue.poll(); entry != null; entry = queue.poll()) {
+      reject(entry);
+    }
+
+    log.info(String.format("close() end: %s", this));
+  }
+
+  private void enqueue(Entry entry) {
+    queue.add(entry);
+    // the writer may have stopped between the closed check of the caller and the add
+    if (closed && !writer.isAlive() && queue.remove(entry)) {
+      reject(entry);
+      throw new RejectedExecutionException("WriteBehindInserter is closed");
+    }
+  }
+
+  private static void reject(Entry entry) {
+    entry.id.completeExceptionally(new RejectedExecutionException("WriteBehindInserter is closed"));
+  }
+
+  private void writeBatches() {
+    List<Entry> entries = new ArrayList<Entry>(batchRows);
+    CustomerBatch batch = new CustomerBatch(batchRows);
+
+    while (true) {
+      Entry entry = queue.poll();
+      if (entry == null) {
+        if (entries.isEmpty()) {
+          if (closed) {
+            return;
+          }
+          LockSupport.parkNanos(this, maxDelayNanos);
+          continue;
+        }
+        long wait = entries.get(0).queuedAt + maxDelayNanos - System.nanoTime();
+        if (wait > 0 && !closed) {
+          LockSupport.parkNanos(this, wait);
+          continue;
+        }
+        write(entries, batch);
+      } else if (entry.flush) {
+        write(entries, batch);
+        entry.id.complete(null);
+      } else {
+        queued.decrementAndGet();
+        room.release();
+        entries.add(entry);
+        if (entries.size() == batchRows) {
+          write(entries, batch);
+        }
+      }
+    }
+  }
+
+  private void write(List<Entry> entries, CustomerBatch batch) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    for (Entry entry : entries) {
+      batch.add(entry.firstName, entry.lastName);
+    }
+    try {
+      long[] ids = custService.insertDataReturningKeys(batch);
+      batches.increment();
+      rowsWritten.add(entries.size());
+      for (int i = 0; i < entries.size(); i++) {
+        entries.get(i).id.complete(ids[i]);
+      }
+    } catch (Exception e) {
+      log.error(String.format("write(): batch of %s customers failed", entries.size()), e);
+      rowsFailed.add(entries.size());
+      for (Entry entry : entries) {
+        entry.id.completeExceptionally(e);
+      }
+    } finally {
+      entries.clear();
+      batch.clear();
+    }
+  }
+
+  public int getQueued() {
+    return queued.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("WriteBehindInserter [batchRows=%s, queued=%s, batches=%s, rowsWritten=%s, rowsFailed=%s]",
+        batchRows, queued.get(), batches.sum(), rowsWritten.sum(), rowsFailed.sum());
+  }
+
+}